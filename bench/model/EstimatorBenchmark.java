@@ -0,0 +1,86 @@
+package model;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Per-step costs of the estimator: the forward step (posEstimate) for "nothing" and for a
+ * real reading, moving the simulated robot, drawing a sensor reading and reading the whole
+ * probability grid through getCurrentProb, as the viewer does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class EstimatorBenchmark {
+
+	@Param({"4", "16", "64", "256"})
+	int size;
+
+	@Param({"false", "true"})
+	boolean matrixFree;
+
+	HMMPredictor estimator;
+	RobotSimulator robot;
+	int middle;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		HMMModel model = new HMMModel(size, size, matrixFree, false);
+
+		estimator = new HMMPredictor(model, new SplittableRandom(42));
+		robot = new RobotSimulator(size, size, model.getTransitionModel(), model.getObservationModel(), new SplittableRandom(42));
+		middle = size/2;
+		//Get away from the uniform prior so the numbers are realistic
+		for(int i = 0; i < 20; i++){
+			estimator.update();
+		}
+	}
+
+	@Benchmark
+	public void posEstimateNothing() {
+		estimator.observe(-1, -1);
+	}
+
+	@Benchmark
+	public void posEstimateReading() {
+		estimator.observe(middle, middle);
+	}
+
+	@Benchmark
+	public int[] move() {
+		robot.move();
+		return robot.getPosition();
+	}
+
+	@Benchmark
+	public int[] getSensorReading() {
+		robot.sense();
+		return robot.getReading();
+	}
+
+	@Benchmark
+	public void getCurrentProb(Blackhole hole) {
+		for(int x = 0; x < size; x++){
+			for(int y = 0; y < size; y++){
+				hole.consume(estimator.getCurrentProb(x, y));
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Cost of building the models: generateT (the sparse transition model), the stencil one,
+ * generateOs (the observation model, parametric or with the precomputed table) and a whole
+ * estimator for each way of storing them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelConstructionBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Size {
+		@Param({"4", "16", "64", "256"})
+		int size;
+	}
+
+	@Benchmark
+	public TransitionModel generateT(Size grid) {
+		return new SparseTransitionModel(grid.size, grid.size);
+	}
+
+	/*
+	 * stores nothing of size N, so this should not grow with the grid
+	 */
+	@Benchmark
+	public TransitionModel generateStencilT(Size grid) {
+		return new StencilTransitionModel(grid.size, grid.size);
+	}
+
+	@Benchmark
+	public ObservationModel generateOs(Size grid) {
+		return new ObservationModel(grid.size, grid.size);
+	}
+
+	/*
+	 * The precomputed table grows as size^4, so it has its own, smaller sizes
+	 */
+	@State(Scope.Benchmark)
+	public static class DenseSize {
+		@Param({"4", "8", "16", "32"})
+		int size;
+	}
+
+	@Benchmark
+	public ObservationModel generateOsPrecomputed(DenseSize dense) {
+		return new ObservationModel(dense.size, dense.size, true);
+	}
+
+	@Benchmark
+	public HMMPredictor newSparsePredictor(Size grid) {
+		return new HMMPredictor(grid.size, grid.size);
+	}
+
+	@Benchmark
+	public HMMPredictor newStencilPredictor(Size grid) {
+		return new HMMPredictor(grid.size, grid.size, true);
+	}
+
+	@Benchmark
+	public HMMPredictor newDenseObservationPredictor(DenseSize dense) {
+		return new HMMPredictor(dense.size, dense.size, false, true);
+	}
+}
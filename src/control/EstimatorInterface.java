@@ -65,4 +65,55 @@ public interface EstimatorInterface {
 	 */	
 	public double getTProb( int x, int y, int h, int nX, int nY, int nH);
 
+	/*
+	 * bulk versions of the getters above, which fill a buffer of the caller in one call,
+	 * e.g. to draw a whole frame. The defaults call the getters for every entry;
+	 * implementations can do better.
+	 */
+
+	/*
+	 * writes getCurrentProb( x, y) into probs[x*cols + y] for every cell of the grid
+	 */
+	public default void getCurrentProbs( double[] probs) {
+		int cols = getNumCols();
+
+		for( int x=0; x<getNumRows(); x++) {
+			for( int y=0; y<cols; y++) {
+				probs[x*cols + y] = getCurrentProb( x, y);
+			}
+		}
+	}
+
+	/*
+	 * writes the row of T for pose (x, y, h), i.e. getTProb( x, y, h, nX, nY, nH), into
+	 * probs[(nX*cols + nY)*head + nH] for every pose
+	 */
+	public default void getTRow( int x, int y, int h, double[] probs) {
+		int cols = getNumCols(), head = getNumHead();
+
+		for( int nX=0; nX<getNumRows(); nX++) {
+			for( int nY=0; nY<cols; nY++) {
+				for( int nH=0; nH<head; nH++) {
+					probs[(nX*cols + nY)*head + nH] = getTProb( x, y, h, nX, nY, nH);
+				}
+			}
+		}
+	}
+
+	/*
+	 * writes getOrXY( rX, rY, x, y, h), the diagonal of O_r, into probs[(x*cols + y)*head + h]
+	 * for every pose
+	 */
+	public default void getOrVector( int rX, int rY, double[] probs) {
+		int cols = getNumCols(), head = getNumHead();
+
+		for( int x=0; x<getNumRows(); x++) {
+			for( int y=0; y<cols; y++) {
+				for( int h=0; h<head; h++) {
+					probs[(x*cols + y)*head + h] = getOrXY( rX, rY, x, y, h);
+				}
+			}
+		}
+	}
+
 }
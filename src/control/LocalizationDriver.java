@@ -2,28 +2,79 @@ package control;
 
 import view.*;
 
-public class LocalizationDriver extends Thread {
+/*
+ * Runs the viewer continuously, one step every stepTime ms on a StepScheduler. Steps late
+ * because the grid is large are skipped instead of bunched up; a stepTime of 0 runs as many
+ * steps per second as the estimator and the viewer manage.
+ * Once started it takes over the buttons of the viewer: Go and Stop resume and pause the
+ * scheduler, so the time spent stopped does not count as lag, and single steps are run on the
+ * scheduler thread as well.
+ */
+public class LocalizationDriver implements Viewer {
 	
-	private RobotLocalizationViewer l;
-	long timer;
+	private Viewer l;
+	private StepScheduler scheduler;
 	
-	public LocalizationDriver( long stepTime, RobotLocalizationViewer v) {
+	public LocalizationDriver( long stepTime, Viewer v) {
+		this( stepTime, v, StepScheduler.Policy.SKIP);
+	}
+	
+	public LocalizationDriver( long stepTime, Viewer v, StepScheduler.Policy policy) {
 		this.l = v;
-		this.timer = stepTime;
-	}
-	
-	public void run() {
-		while( !isInterrupted()) {
-			
-			
-			try{
-				l.updateContinuously();
-				sleep( timer);
-			} catch( InterruptedException e) {
-				System.out.println( "oops");
-			}
-
-		}
+		this.scheduler = new StepScheduler( l::updateOneStep, stepTime*1000000, policy, "LocalizationDriver");
+		//Until Go is pressed
+		scheduler.pause();
+	}
+	
+	/*
+	 * takes over the buttons of the viewer and waits for Go
+	 */
+	public void start() {
+		l.setControls( this);
+		scheduler.start();
+	}
+	
+	public void pause() {
+		setRunFlag( false);
+	}
+	
+	public void resume() {
+		setRunFlag( true);
+	}
+	
+	public void setRunFlag( boolean run) {
+		l.setRunFlag( run);
+		if( run)
+			scheduler.resume();
+		else
+			scheduler.pause();
+	}
+	
+	public void initLocViewer() {
+		l.initLocViewer();
+	}
+	
+	public void updateOneStep() {
+		scheduler.requestStep();
+	}
+	
+	/*
+	 * stops after the current step and waits for it; the buttons act on the viewer again
+	 */
+	public void shutdown() throws InterruptedException {
+		scheduler.shutdown();
+		l.setControls( l);
+	}
+	
+	public void setStepTime( long stepTime) {
+		scheduler.setPeriod( stepTime*1000000);
+	}
+	
+	/*
+	 * lag, skipped steps and steps per second so far
+	 */
+	public StepScheduler getScheduler() {
+		return scheduler;
 	}
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package control;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+import model.HMMModel;
+import model.HMMPredictor;
+import model.ModelCache;
+import model.RobotSimulator;
+import model.SensorLogReader;
+import model.SensorLogWriter;
+
+/*
+ * Records simulated sensor readings into a log, or replays a log through the forward filter
+ * and reports the throughput and the final estimate.
+ * Usage: LogReplay record [file] [rows] [cols] [steps] [seed]
+ *        LogReplay replay [file] [matrixFree]
+ */
+public class LogReplay {
+
+	public static void main( String[] args) throws Exception {
+		String mode = args.length > 0 ? args[0] : "replay";
+		Path file = Paths.get( args.length > 1 ? args[1] : "readings.log");
+
+		if( mode.equals( "record")) {
+			int rows = args.length > 2 ? Integer.parseInt( args[2]) : 8;
+			int cols = args.length > 3 ? Integer.parseInt( args[3]) : rows;
+			long steps = args.length > 4 ? Long.parseLong( args[4]) : 1000000;
+			long seed = args.length > 5 ? Long.parseLong( args[5]) : 42;
+
+			record( file, rows, cols, steps, seed);
+		} else if( mode.equals( "replay")) {
+			replay( file, args.length > 2 && Boolean.parseBoolean( args[2]));
+		} else {
+			System.err.println( "Usage: LogReplay record [file] [rows] [cols] [steps] [seed] | replay [file] [matrixFree]");
+		}
+	}
+
+	private static void record( Path file, int rows, int cols, long steps, long seed) throws Exception {
+		HMMModel model = ModelCache.shared().get( rows, cols);
+		RobotSimulator robot = new RobotSimulator( rows, cols, model.getTransitionModel(), model.getObservationModel(),
+				new SplittableRandom( seed));
+		long start = System.nanoTime();
+
+		try( SensorLogWriter log = new SensorLogWriter( file, rows, cols)) {
+			for( long step=0; step<steps; step++) {
+				robot.move();
+				robot.sense();
+				log.write( robot.getReading()[0], robot.getReading()[1]);
+			}
+		}
+		System.out.println( "Recorded " + steps + " readings into " + file + " in " + (System.nanoTime() - start)/1000000 + " ms");
+	}
+
+	private static void replay( Path file, boolean matrixFree) throws Exception {
+		try( SensorLogReader log = new SensorLogReader( file)) {
+			int rows = log.getNumRows(), cols = log.getNumCols(), bestX = 0, bestY = 0;
+			HMMPredictor estimator = new HMMPredictor( new HMMModel( rows, cols, matrixFree, false));
+			long start = System.nanoTime(), readings;
+			double seconds;
+
+			readings = log.replay( estimator);
+			seconds = (System.nanoTime() - start)/1e9;
+
+			for( int x=0; x<rows; x++) {
+				for( int y=0; y<cols; y++) {
+					if( estimator.getCurrentProb( x, y) > estimator.getCurrentProb( bestX, bestY)) {
+						bestX = x;
+						bestY = y;
+					}
+				}
+			}
+			System.out.println( "Replayed " + readings + " readings of a " + rows + "x" + cols + " grid in "
+					+ String.format( "%.3f", seconds) + " s (" + (long) (readings/seconds) + " readings/s)");
+			System.out.println( "Most likely cell (" + bestX + "," + bestY + ") with probability "
+					+ estimator.getCurrentProb( bestX, bestY));
+			if( estimator.getReseeds() > 0)
+				System.out.println( estimator.getReseeds() + " readings no state could explain, the belief started over from them");
+		}
+	}
+}
@@ -1,12 +1,16 @@
 package control;
 
 import model.HMMPredictor;
+import view.HeatmapViewer;
 import view.RobotLocalizationViewer;
+import view.Viewer;
 
 public class Main {
 	/*
 	 * build your own if you like, this is just an example of how to start the viewer
 	 * ...
+	 * Usage: Main [fields|heatmap|pipeline] [rows] [cols] [stepTime]; the heatmap viewer suits
+	 * large grids, and pipeline runs the estimator apart from the drawing, as fast as stepTime lets it
 	 */
 	
 	public static void main( String[] args) {
@@ -15,14 +19,28 @@ public class Main {
 		 * generate you own localiser / estimator wrapper here to plug it into the 
 		 * graphics class.
 		 */
-		EstimatorInterface l = new HMMPredictor(8, 8);
+		int rows = args.length > 1 ? Integer.parseInt( args[1]) : 8;
+		int cols = args.length > 2 ? Integer.parseInt( args[2]) : rows;
+		long stepTime = args.length > 3 ? Long.parseLong( args[3]) : 500;
+		EstimatorInterface l = new HMMPredictor(rows, cols);
 
-		RobotLocalizationViewer viewer = new RobotLocalizationViewer( l);
+		Viewer viewer;
+		if( args.length > 0 && args[0].equals( "pipeline")) {
+			HeatmapViewer heatmap = new HeatmapViewer( l);
+			SimulationPipeline pipeline = new SimulationPipeline( l, heatmap::render, stepTime);
+			heatmap.setControls( pipeline);
+			pipeline.start();
+			return;
+		}
+		if( args.length > 0 && args[0].equals( "heatmap"))
+			viewer = new HeatmapViewer( l);
+		else
+			viewer = new RobotLocalizationViewer( l);
 
 		/*
 		 * this thread controls the continuous update. If it is not started, 
 		 * you can only click through your localisation stepwise
 		 */
-		new LocalizationDriver( 500, viewer).start();
+		new LocalizationDriver( stepTime, viewer).start();
 	}
 }	
\ No newline at end of file
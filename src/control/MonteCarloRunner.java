@@ -0,0 +1,111 @@
+package control;
+
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.HMMModel;
+import model.HMMPredictor;
+import model.ModelCache;
+
+/*
+ * Runs the simulation without the viewer: many independent runs of the robot and the
+ * estimator, spread over a pool of threads. Every run gets its own SplittableRandom split
+ * off the seed in run order, so results do not depend on how runs are scheduled. All runs
+ * share one model.
+ *
+ * For every run it writes the mean and final localisation error (Manhattan distance between
+ * the most likely cell and the true position), how often the most likely cell was right and
+ * the steps per second of update() alone, followed by a summary line over all runs, as CSV.
+ * Usage: MonteCarloRunner [rows] [cols] [runs] [steps] [threads] [seed] [output.csv]
+ */
+public class MonteCarloRunner {
+
+	public static void main( String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt( args[0]) : 8;
+		int cols = args.length > 1 ? Integer.parseInt( args[1]) : rows;
+		int runs = args.length > 2 ? Integer.parseInt( args[2]) : 100;
+		int steps = args.length > 3 ? Integer.parseInt( args[3]) : 10000;
+		int threads = args.length > 4 ? Integer.parseInt( args[4]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 5 ? Long.parseLong( args[5]) : 42;
+		Writer out = args.length > 6 ? new FileWriter( args[6]) : new OutputStreamWriter( System.out);
+
+		HMMModel model = ModelCache.shared().get( rows, cols);
+		SplittableRandom master = new SplittableRandom( seed);
+		ExecutorService pool = Executors.newFixedThreadPool( threads);
+		List<Future<double[]>> results = new ArrayList<Future<double[]>>( runs);
+
+		for( int run=0; run<runs; run++) {
+			final SplittableRandom random = master.split();
+			results.add( pool.submit( () -> simulate( model, random, steps)));
+		}
+
+		PrintWriter csv = new PrintWriter( out);
+		try {
+			double errorSum = 0, hitSum = 0, seconds = 0;
+			double[] result;
+
+			csv.println( "run,steps,meanError,finalError,hitRate,stepsPerSec");
+			for( int run=0; run<runs; run++) {
+				result = results.get( run).get();
+				errorSum += result[0];
+				hitSum += result[2];
+				seconds += result[3];
+				csv.println( run + "," + steps + "," + result[0] + "," + (int) result[1] + "," + result[2] + "," + (long) (steps/result[3]));
+			}
+			//Steps per second of a single thread, over the time spent in update() by all runs
+			csv.println( "all," + ((long) runs*steps) + "," + errorSum/runs + ",," + hitSum/runs + ","
+					+ (long) ((double) runs*steps/seconds));
+		} finally {
+			//Closing it would close System.out as well
+			if( args.length > 6)
+				csv.close();
+			else
+				csv.flush();
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * one run; returns {mean error, final error, hit rate, seconds spent in update()}. Only
+	 * update() is timed, finding the most likely cell scans the whole grid and would dominate
+	 * on large grids.
+	 */
+	private static double[] simulate( HMMModel model, SplittableRandom random, int steps) {
+		HMMPredictor estimator = new HMMPredictor( model, random);
+		double[] probs = new double[model.getNumRows()*model.getNumCols()];
+		long errorSum = 0, hits = 0, nanos = 0, start;
+		int error = 0;
+
+		for( int step=0; step<steps; step++) {
+			start = System.nanoTime();
+			estimator.update();
+			nanos += System.nanoTime() - start;
+			error = error( estimator, probs);
+			errorSum += error;
+			if( error == 0)
+				hits++;
+		}
+		return new double[]{ (double) errorSum/steps, error, (double) hits/steps, nanos/1e9};
+	}
+
+	//Manhattan distance between the most likely cell and the true position; probs holds one entry per cell
+	private static int error( EstimatorInterface estimator, double[] probs) {
+		int[] truePos = estimator.getCurrentTruePosition();
+		int best = 0, cols = estimator.getNumCols();
+
+		estimator.getCurrentProbs( probs);
+		for( int cell=1; cell<probs.length; cell++) {
+			if( probs[cell] > probs[best])
+				best = cell;
+		}
+		return Math.abs( best/cols - truePos[0]) + Math.abs( best%cols - truePos[1]);
+	}
+}
@@ -0,0 +1,43 @@
+package control;
+
+import model.FloatHMMPredictor;
+import model.HMMPredictor;
+
+/*
+ * Runs the double and the float estimators side by side on the same simulated readings and
+ * reports how far apart their position estimates get. Every interval it prints the largest
+ * difference seen in one cell's probability, and the L1 distance between the two grids.
+ * Usage: PrecisionReport [rows] [cols] [steps] [interval]
+ */
+public class PrecisionReport {
+
+	public static void main( String[] args) {
+		int rows = args.length > 0 ? Integer.parseInt( args[0]) : 8;
+		int cols = args.length > 1 ? Integer.parseInt( args[1]) : rows;
+		long steps = args.length > 2 ? Long.parseLong( args[2]) : 1000000;
+		long interval = Math.max( 1, args.length > 3 ? Long.parseLong( args[3]) : steps/10);
+		HMMPredictor reference = new HMMPredictor( rows, cols);
+		FloatHMMPredictor single = new FloatHMMPredictor( rows, cols);
+		double maxCell = 0, maxL1 = 0, cell, l1;
+		int[] reading;
+
+		System.out.println( "step,maxCellDiff,maxL1");
+		for( long step=1; step<=steps; step++) {
+			reference.update();
+			reading = reference.getCurrentReading();
+			single.observe( reading[0], reading[1]);
+
+			l1 = 0;
+			for( int x=0; x<rows; x++) {
+				for( int y=0; y<cols; y++) {
+					cell = Math.abs( reference.getCurrentProb( x, y) - single.getCurrentProb( x, y));
+					maxCell = Math.max( maxCell, cell);
+					l1 += cell;
+				}
+			}
+			maxL1 = Math.max( maxL1, l1);
+			if( step % interval == 0)
+				System.out.println( step + "," + maxCell + "," + maxL1);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package control;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.swing.Timer;
+
+import view.BeliefFrame;
+import view.Viewer;
+
+/*
+ * Runs the estimator on a worker thread and the drawing on the Swing event thread, so neither
+ * holds up the other. The worker copies the state into an immutable BeliefFrame at most once per
+ * display period and drops it into a single slot, replacing the frame there if it was not drawn
+ * yet. A Swing timer takes whatever frame is in the slot at the display rate and renders it, so
+ * frames that went stale before they could be shown are never drawn.
+ * It takes the controls of a viewer (see HeatmapViewer.setControls) instead of a
+ * LocalizationDriver. The scheduler is paused while the pipeline is not running, single steps are
+ * asked of it, and it shows the last state each time it goes idle.
+ */
+public class SimulationPipeline implements Viewer {
+
+	public static final int DEFAULT_FPS = 60;
+
+	private final EstimatorInterface loc;
+	private final Consumer<BeliefFrame> renderer;
+	private final AtomicReference<BeliefFrame> latest;
+	private final StepScheduler scheduler;
+	private final Timer timer;
+	private final long frameNanos;
+	//Guarded by this
+	private boolean running, initialised;
+	//Written by the worker only
+	private volatile long published, dropped;
+	private long steps, lastPublished;
+	private boolean unpublished;
+	//Written by the event thread only
+	private volatile long rendered;
+
+	public SimulationPipeline( EstimatorInterface loc, Consumer<BeliefFrame> renderer, long stepTime) {
+		this( loc, renderer, stepTime, DEFAULT_FPS);
+	}
+
+	/*
+	 * stepTime is the period in ms of the steps (see StepScheduler), 0 to step as fast as possible; renderer is
+	 * called on the event thread, at most fps times per second
+	 */
+	public SimulationPipeline( EstimatorInterface loc, Consumer<BeliefFrame> renderer, long stepTime, int fps) {
+		this.loc = loc;
+		this.renderer = renderer;
+		this.frameNanos = 1000000000L/fps;
+		latest = new AtomicReference<BeliefFrame>();
+
+		scheduler = new StepScheduler( this::step, stepTime*1000000, StepScheduler.Policy.SKIP, "SimulationPipeline");
+		scheduler.setOnPause( this::idle);
+		//Until initialised and running
+		scheduler.pause();
+		timer = new Timer( Math.max( 1, 1000/fps), e -> render());
+		timer.setCoalesce( true);
+	}
+
+	public void start() {
+		scheduler.start();
+		timer.start();
+	}
+
+	/*
+	 * stops the worker and the timer; the estimator is not stepped any more
+	 */
+	public void shutdown() throws InterruptedException {
+		timer.stop();
+		scheduler.shutdown();
+	}
+
+	public void setStepTime( long stepTime) {
+		scheduler.setPeriod( stepTime*1000000);
+	}
+
+	public synchronized void setRunFlag( boolean run) {
+		running = run;
+		schedule();
+	}
+
+	/*
+	 * shows the starting state and lets the worker start stepping
+	 */
+	public void initLocViewer() {
+		synchronized( this) {
+			if( initialised)
+				return;
+		}
+		//The worker does not touch the estimator before this
+		publish();
+		synchronized( this) {
+			initialised = true;
+			schedule();
+		}
+	}
+
+	/*
+	 * asks the worker for one more step while not running
+	 */
+	public synchronized void updateOneStep() {
+		if( initialised)
+			scheduler.requestStep();
+	}
+
+	public long getSteps() {
+		return scheduler.getSteps();
+	}
+	/*
+	 * measured over the last second
+	 */
+	public double getStepsPerSecond() {
+		return scheduler.getStepsPerSecond();
+	}
+	public StepScheduler getScheduler() {
+		return scheduler;
+	}
+	public long getFramesPublished() {
+		return published;
+	}
+	/*
+	 * frames replaced in the slot before the display took them
+	 */
+	public long getFramesDropped() {
+		return dropped;
+	}
+	public long getFramesRendered() {
+		return rendered;
+	}
+
+	//Called with the lock held; the worker only steps once initialised and running
+	private void schedule() {
+		if( running && initialised)
+			scheduler.resume();
+		else
+			scheduler.pause();
+	}
+
+	//One tick of the scheduler
+	private void step() {
+		loc.update();
+		steps++;
+		unpublished = true;
+		if( System.nanoTime() - lastPublished >= frameNanos)
+			publish();
+	}
+
+	//Run by the worker when it goes idle, so the last state is shown
+	private void idle() {
+		if( unpublished)
+			publish();
+	}
+
+	private void publish() {
+		if( latest.getAndSet( BeliefFrame.capture( steps, loc)) != null)
+			dropped++;
+		published++;
+		lastPublished = System.nanoTime();
+		unpublished = false;
+	}
+
+	private void render() {
+		BeliefFrame frame = latest.getAndSet( null);
+
+		if( frame != null) {
+			renderer.accept( frame);
+			rendered++;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package control;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Runs a task at a fixed rate on its own thread. Tick k is due at start + k*period, worked out
+ * from the start rather than from the end of the previous step, so the cost of the steps does not
+ * make the rate drift. When a step is late the delay is measured as lag, and the ticks it missed
+ * are either run back to back (CATCH_UP, up to maxCatchUp of them) or skipped (SKIP). A period of
+ * 0 runs the task as often as it can. The steps per second are measured over the last second.
+ * While paused the task is only run on request, and the time spent paused is not counted as lag.
+ */
+public class StepScheduler {
+
+	public enum Policy { CATCH_UP, SKIP }
+
+	/*
+	 * one step; an InterruptedException stops the scheduler
+	 */
+	public interface Task {
+		public void step() throws InterruptedException;
+	}
+
+	public static final int DEFAULT_MAX_CATCH_UP = 10;
+
+	private final Task task;
+	private final Policy policy;
+	private final Thread thread;
+	private volatile long period;
+	private volatile int maxCatchUp;
+	private volatile Runnable onPause;
+	//Guarded by this
+	private boolean paused, stopping, rebase;
+	private int requested;
+	//Written by the scheduler thread only
+	private volatile long steps, skipped, lastLag, maxLag, totalLag;
+	private volatile double stepsPerSecond;
+	private long windowStart, windowSteps;
+
+	/*
+	 * period in ns, 0 for no limit
+	 */
+	public StepScheduler( Task task, long period, Policy policy) {
+		this( task, period, policy, "StepScheduler");
+	}
+
+	public StepScheduler( Task task, long period, Policy policy, String name) {
+		this.task = task;
+		this.period = Math.max( 0, period);
+		this.policy = policy;
+		this.maxCatchUp = DEFAULT_MAX_CATCH_UP;
+		thread = new Thread( this::run, name);
+		thread.setDaemon( true);
+	}
+
+	/*
+	 * a scheduler paused before it is started waits for resume() to make its first step
+	 */
+	public void start() {
+		thread.start();
+	}
+
+	public synchronized void pause() {
+		paused = true;
+		notifyAll();
+	}
+
+	/*
+	 * the schedule starts again from now, so the time spent paused is not caught up.
+	 * Does nothing if not paused.
+	 */
+	public synchronized void resume() {
+		if( !paused)
+			return;
+		paused = false;
+		rebase = true;
+		requested = 0;
+		notifyAll();
+	}
+
+	/*
+	 * makes one more step on the scheduler thread while paused, as soon as the current one
+	 * (if any) ends; ignored while running
+	 */
+	public synchronized void requestStep() {
+		if( paused) {
+			requested++;
+			notifyAll();
+		}
+	}
+
+	/*
+	 * run on the scheduler thread each time it goes idle after a pause (or starts paused), once
+	 * the last step has ended, e.g. to show the final state
+	 */
+	public void setOnPause( Runnable onPause) {
+		this.onPause = onPause;
+	}
+
+	public synchronized boolean isPaused() {
+		return paused;
+	}
+
+	/*
+	 * asks the scheduler to stop after the current step, without waiting for it
+	 */
+	public synchronized void stop() {
+		stopping = true;
+		notifyAll();
+	}
+
+	/*
+	 * stops the scheduler and waits for the current step to end. A step blocked waiting
+	 * for something else is interrupted.
+	 */
+	public void shutdown() throws InterruptedException {
+		stop();
+		if( Thread.currentThread() == thread)
+			return;
+		thread.interrupt();
+		thread.join();
+	}
+
+	/*
+	 * new period in ns, 0 for no limit; it applies from the next tick on
+	 */
+	public synchronized void setPeriod( long period) {
+		this.period = Math.max( 0, period);
+		rebase = true;
+		notifyAll();
+	}
+	public long getPeriod() {
+		return period;
+	}
+
+	/*
+	 * ticks that CATCH_UP runs late at most; beyond that the schedule starts again from now
+	 */
+	public void setMaxCatchUp( int maxCatchUp) {
+		this.maxCatchUp = Math.max( 0, maxCatchUp);
+	}
+
+	public long getSteps() {
+		return steps;
+	}
+	/*
+	 * ticks dropped because the steps fell behind
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+	public double getStepsPerSecond() {
+		return stepsPerSecond;
+	}
+	/*
+	 * how late the last step started, in ns
+	 */
+	public long getLastLag() {
+		return lastLag;
+	}
+	public long getMaxLag() {
+		return maxLag;
+	}
+	public double getMeanLag() {
+		return steps == 0 ? 0 : totalLag/(double) steps;
+	}
+
+	public String lagReport() {
+		return String.format( "%d steps (%d skipped), %.1f steps/s, lag mean %.3f ms, max %.3f ms, last %.3f ms",
+				steps, skipped, stepsPerSecond, getMeanLag()/1e6, maxLag/1e6, lastLag/1e6);
+	}
+
+	private void run() {
+		long next = System.nanoTime(), now, late, behind;
+		//idle: no step since onPause was last run
+		boolean idle = false, requestedStep;
+		Runnable hook;
+
+		windowStart = next;
+		try {
+			while( true) {
+				if( !idle && isPaused()) {
+					idle = true;
+					hook = onPause;
+					if( hook != null)
+						hook.run();
+				}
+				synchronized( this) {
+					while( paused && !stopping && requested == 0) wait();
+					if( stopping)
+						return;
+					requestedStep = paused;
+					if( requestedStep) {
+						requested--;
+					} else {
+						if( rebase) {
+							next = System.nanoTime();
+							rebase = false;
+						}
+						//Wait for the tick, waking up early on pause, stop or a new period
+						while( period > 0 && !paused && !stopping && !rebase && (late = next - System.nanoTime()) > 0) {
+							TimeUnit.NANOSECONDS.timedWait( this, late);
+						}
+						if( paused || stopping || rebase)
+							continue;
+					}
+				}
+
+				//A step asked for while paused is not on the schedule, so it has no lag
+				if( !requestedStep && period > 0) {
+					now = System.nanoTime();
+					late = now - next;
+					behind = late/period;
+					if( behind > 0 && (policy == Policy.SKIP || behind > maxCatchUp)) {
+						next += behind*period;
+						skipped += behind;
+					}
+					lastLag = late;
+					maxLag = Math.max( maxLag, late);
+					totalLag += late;
+				}
+
+				idle = false;
+				task.step();
+				steps++;
+				if( !requestedStep)
+					next = period > 0 ? next + period : System.nanoTime();
+				rate( System.nanoTime());
+			}
+		} catch( InterruptedException e) {
+			//A shutdown, or the task gave up
+		} finally {
+			synchronized( this) {
+				stopping = true;
+				notifyAll();
+			}
+		}
+	}
+
+	private void rate( long now) {
+		windowSteps++;
+		if( now - windowStart >= 1000000000L) {
+			stepsPerSecond = windowSteps*1e9/(now - windowStart);
+			windowStart = now;
+			windowSteps = 0;
+		}
+	}
+}
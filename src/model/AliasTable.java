@@ -0,0 +1,68 @@
+package model;
+
+import java.util.random.RandomGenerator;
+
+/*
+ * Walker's alias method: after an O(n) setup, draws one of n outcomes with the given
+ * probabilities in O(1) time using a single random number.
+ */
+public class AliasTable {
+
+	private final int n;
+	//Outcome k is kept with probability cut[k], otherwise alias[k] is returned
+	private final double[] cut;
+	private final int[] alias;
+
+	/*
+	 * builds the table for outcomes 0..n-1 with probabilities proportional to weights[0..n-1]
+	 */
+	public AliasTable(double[] weights, int n){
+		double[] scaled = new double[n];
+		int[] small = new int[n], large = new int[n];
+		int smalls = 0, larges = 0, s, l;
+		double total = 0;
+
+		this.n = n;
+		cut = new double[n];
+		alias = new int[n];
+
+		for(int k = 0; k < n; k++){
+			total += weights[k];
+			scaled[k] = weights[k]*n;
+		}
+		for(int k = 0; k < n; k++){
+			scaled[k] /= total;
+			if(scaled[k] < 1)
+				small[smalls++] = k;
+			else
+				large[larges++] = k;
+		}
+
+		//Pair every light outcome with a heavy one that fills the rest of its column
+		while(smalls > 0 && larges > 0){
+			s = small[--smalls];
+			l = large[--larges];
+			cut[s] = scaled[s];
+			alias[s] = l;
+			scaled[l] -= 1 - scaled[s];
+			if(scaled[l] < 1)
+				small[smalls++] = l;
+			else
+				large[larges++] = l;
+		}
+		//Whatever is left is full up to rounding errors
+		while(larges > 0){
+			cut[large[--larges]] = 1;
+		}
+		while(smalls > 0){
+			cut[small[--smalls]] = 1;
+		}
+	}
+
+	public int sample(RandomGenerator random){
+		double u = random.nextDouble()*n;
+		int k = Math.min((int) u, n - 1);
+
+		return u - k < cut[k] ? k : alias[k];
+	}
+}
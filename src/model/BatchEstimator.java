@@ -0,0 +1,109 @@
+package model;
+
+import java.util.Arrays;
+
+/*
+ * Forward filtering for many robots on the same map. All robots share one HMMModel, and their
+ * beliefs form a single robots x states matrix stored with the robot index varying fastest:
+ * entry (r,i) lives at f[i*robots + r]. A step walks the states once, reading each column of T
+ * a single time and applying it to every robot, so the model stays in cache however many
+ * robots are tracked.
+ */
+public class BatchEstimator {
+
+	private final int rows, cols, head, robots;
+	private final TransitionModel T;
+	private final ObservationModel O;
+	private double[] f, fNext;
+	//Per robot scratch: observation weight of the current cell, belief sum, normaliser
+	private final double[] weight, sumf, alpha;
+
+	public BatchEstimator(HMMModel model, int robots){
+		this.rows = model.getNumRows();
+		this.cols = model.getNumCols();
+		this.head = model.getNumHead();
+		this.robots = robots;
+		this.T = model.getTransitionModel();
+		this.O = model.getObservationModel();
+
+		f = new double[rows*cols*head*robots];
+		fNext = new double[rows*cols*head*robots];
+		Arrays.fill(f, 1/((double)rows*(double)cols*(double)head));
+		weight = new double[robots];
+		sumf = new double[robots];
+		alpha = new double[robots];
+	}
+
+	public int getNumRobots() {
+		return robots;
+	}
+
+	/*
+	 * advances every robot by one step; robot r got the reading (rX[r],rY[r]),
+	 * with (-1,-1) meaning "nothing"
+	 */
+	public void update(int[] rX, int[] rY) {
+		double[] swap;
+		double p;
+		int i, base, src;
+
+		Arrays.fill(sumf, 0);
+		for(int row = 0; row < rows; row++){
+			for(int col = 0; col < cols; col++){
+				for(int r = 0; r < robots; r++){
+					weight[r] = O.get(rX[r], rY[r], row, col);
+				}
+				for(int h = 0; h < head; h++){
+					i = (row*cols + col)*head + h;
+					base = i*robots;
+					Arrays.fill(fNext, base, base + robots, 0);
+					for(int k = 0; k < T.inDegree(i); k++){
+						p = T.inProb(i,k);
+						src = T.source(i,k)*robots;
+						for(int r = 0; r < robots; r++){
+							fNext[base + r] += p*f[src + r];
+						}
+					}
+					for(int r = 0; r < robots; r++){
+						fNext[base + r] *= weight[r];
+						sumf[r] += fNext[base + r];
+					}
+				}
+			}
+		}
+
+		//Normalise every robot's belief
+		for(int r = 0; r < robots; r++){
+			alpha[r] = 1/sumf[r];
+		}
+		for(i = 0; i < fNext.length; i += robots){
+			for(int r = 0; r < robots; r++){
+				fNext[i + r] *= alpha[r];
+			}
+		}
+		swap = f;
+		f = fNext;
+		fNext = swap;
+	}
+
+	/*
+	 * returns robot r's estimated probability of being in (x,y), summed over headings
+	 */
+	public double getCurrentProb(int r, int x, int y) {
+		double probability = 0;
+
+		for(int h = 0; h < head; h++){
+			probability += f[((x*cols + y)*head + h)*robots + r];
+		}
+		return probability;
+	}
+
+	/*
+	 * forgets what robot r has seen so far and goes back to the uniform prior
+	 */
+	public void reset(int r) {
+		for(int i = 0; i < rows*cols*head; i++){
+			f[i*robots + r] = 1/((double)rows*(double)cols*(double)head);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package model;
+
+import java.util.Arrays;
+
+/*
+ * Online fixed-lag smoothing: after each new reading at step t it gives P(X_t-lag | e_1..e_t),
+ * which uses lag readings from after the step it describes. The last lag+1 forward messages
+ * and readings are kept in ring buffers and each step runs lag backward steps, so memory is
+ * (lag+1)*N doubles and a step costs O(lag*N).
+ */
+public class FixedLagSmoother {
+
+	private final int lag, rows, cols, head, states;
+	private final Smoother smoother;
+	private final double[][] forward;
+	private final int[] readingX, readingY;
+	private final double[] smoothed, b, bNext;
+	private long t;
+
+	/*
+	 * lag is the number of readings after the smoothed step, at least 1
+	 */
+	public FixedLagSmoother(HMMModel model, int lag){
+		if(lag < 1)
+			throw new IllegalArgumentException("The lag must be at least 1, not " + lag);
+		this.lag = lag;
+		this.rows = model.getNumRows();
+		this.cols = model.getNumCols();
+		this.head = model.getNumHead();
+		this.states = model.getNumStates();
+		this.smoother = new Smoother(model);
+
+		forward = new double[lag + 1][states];
+		Arrays.fill(forward[0], 1/(double) states);
+		readingX = new int[lag + 1];
+		readingY = new int[lag + 1];
+		smoothed = new double[states];
+		b = new double[states];
+		bNext = new double[states];
+	}
+
+	/*
+	 * adds the reading of the next step, (-1,-1) for "nothing". Returns true once there is a
+	 * smoothed estimate, i.e. from step lag+1 on; it is then available for getSmoothedStep().
+	 */
+	public boolean observe(int rX, int rY){
+		double[] swap, back = b, next = bNext;
+		int slot;
+
+		t++;
+		slot = (int) (t % (lag + 1));
+		smoother.forward(forward[(int) ((t - 1) % (lag + 1))], forward[slot], rX, rY);
+		readingX[slot] = rX;
+		readingY[slot] = rY;
+		if(t <= lag)
+			return false;
+
+		//Run the backward message from t down to t-lag
+		Arrays.fill(back, 1);
+		for(long s = t; s > t - lag; s--){
+			slot = (int) (s % (lag + 1));
+			smoother.backward(back, next, readingX[slot], readingY[slot]);
+			swap = back;
+			back = next;
+			next = swap;
+		}
+		Smoother.combine(forward[(int) ((t - lag) % (lag + 1))], back, smoothed);
+		return true;
+	}
+
+	/*
+	 * step the current smoothed estimate refers to, t - lag
+	 */
+	public long getSmoothedStep(){
+		return t - lag;
+	}
+
+	/*
+	 * smoothed probability of the robot being in (x,y) at getSmoothedStep(), summed over headings
+	 */
+	public double getSmoothedProb(int x, int y){
+		double probability = 0;
+
+		for(int h = 0; h < head; h++){
+			probability += smoothed[(x*cols + y)*head + h];
+		}
+		return probability;
+	}
+
+	/*
+	 * the smoothed belief over all states at getSmoothedStep(); not to be modified
+	 */
+	public double[] getSmoothed(){
+		return smoothed;
+	}
+}
@@ -0,0 +1,209 @@
+package model;
+
+import java.util.Arrays;
+
+import control.EstimatorInterface;
+
+/*
+ * Single-precision version of HMMPredictor. The belief and the columns of T used by the
+ * forward step are stored as floats, which halves the memory traffic of a step; only the
+ * normalisation sum is accumulated in double. The simulated robot, getTProb and getOrXY use
+ * the matrix-free double models, so they need no storage of their own.
+ */
+public class FloatHMMPredictor implements EstimatorInterface {
+
+	private int rows,cols,head;
+	private float[] f,fNext;
+	//Cells of f and fNext that may hold non-zero values, as {fromRow,toRow,fromCol,toCol}
+	private int[] fWindow,nextWindow;
+	//Column i of T in slots [i*MAX_DEGREE, (i+1)*MAX_DEGREE), padded with probability 0
+	private int[] source;
+	private float[] inProb;
+	private TransitionModel T;
+	private ObservationModel O;
+	private RobotSimulator robot;
+	int[] sens;
+
+	public FloatHMMPredictor(int rows, int cols){
+		int slot;
+
+		this.rows = rows;
+		this.cols = cols;
+		this.head = 4;
+
+		T = new StencilTransitionModel(rows, cols);
+		O = new ObservationModel(rows, cols);
+
+		source = new int[rows*cols*head*SparseTransitionModel.MAX_DEGREE];
+		inProb = new float[rows*cols*head*SparseTransitionModel.MAX_DEGREE];
+		for(int i = 0; i < rows*cols*head; i++){
+			for(int k = 0; k < SparseTransitionModel.MAX_DEGREE; k++){
+				slot = i*SparseTransitionModel.MAX_DEGREE + k;
+				source[slot] = k < T.inDegree(i) ? T.source(i,k) : i;
+				inProb[slot] = k < T.inDegree(i) ? (float) T.inProb(i,k) : 0;
+			}
+		}
+
+		f = new float[rows*cols*head];
+		fNext = new float[rows*cols*head];
+		Arrays.fill(f,(float) (1/((double)rows*(double)cols*(double)head)));
+		fWindow = new int[]{0,rows,0,cols};
+		nextWindow = new int[]{0,0,0,0};
+
+		robot = new RobotSimulator(rows, cols, T, O);
+		sens = new int[2];
+	}
+
+	@Override
+	public int getNumRows() {
+		return this.rows;
+	}
+	@Override
+	public int getNumCols() {
+		return this.cols;
+	}
+	@Override
+	public int getNumHead() {
+		return this.head;
+	}
+
+	//Find the corresponding element in one of the arrays rows*cols*head
+	private int mapT(int row, int col, int head){
+		return col*4 + row*this.cols*4 + head;
+	}
+
+	private void posEstimate(){
+		float[] swap;
+		int[] swapWindow;
+		double sumf = 0, alpha;
+		float o, newf;
+		int fromRow = 0, toRow = rows, fromCol = 0, toCol = cols, slot;
+
+		//Same window as in HMMPredictor: a real reading rules out everything out of sensor range
+		if(sens[0] >= 0 && sens[1] >= 0){
+			fromRow = Math.max(0, sens[0] - O.getRange());
+			toRow = Math.min(rows, sens[0] + O.getRange() + 1);
+			fromCol = Math.max(0, sens[1] - O.getRange());
+			toCol = Math.min(cols, sens[1] + O.getRange() + 1);
+			clear(fNext, nextWindow);
+		}
+
+		for(int row = fromRow; row < toRow; row++){
+			for(int col = fromCol; col < toCol; col++){
+				o = (float) O.get(sens[0],sens[1],row,col);
+				for(int i = mapT(row,col,0); i < mapT(row,col,head); i++){
+					slot = i*SparseTransitionModel.MAX_DEGREE;
+					newf = inProb[slot]*f[source[slot]] + inProb[slot + 1]*f[source[slot + 1]]
+							+ inProb[slot + 2]*f[source[slot + 2]] + inProb[slot + 3]*f[source[slot + 3]];
+					fNext[i] = o*newf;
+					sumf += fNext[i];
+				}
+			}
+		}
+
+		//Corrrect f values
+		alpha = 1/sumf;
+		for(int row = fromRow; row < toRow; row++){
+			for(int i = mapT(row,fromCol,0); i < mapT(row,toCol,0); i++){
+				fNext[i] = (float) (fNext[i]*alpha);
+			}
+		}
+		nextWindow[0] = fromRow;
+		nextWindow[1] = toRow;
+		nextWindow[2] = fromCol;
+		nextWindow[3] = toCol;
+
+		swap = f;
+		f = fNext;
+		fNext = swap;
+		swapWindow = fWindow;
+		fWindow = nextWindow;
+		nextWindow = swapWindow;
+	}
+
+	//Set to zero the cells of v inside window
+	private void clear(float[] v, int[] window){
+		for(int row = window[0]; row < window[1]; row++){
+			Arrays.fill(v, mapT(row,window[2],0), mapT(row,window[3],0), 0);
+		}
+	}
+
+	@Override
+	public void update() {
+		robot.move();
+		robot.sense();
+		sens[0] = robot.getReading()[0];
+		sens[1] = robot.getReading()[1];
+		posEstimate();
+	}
+
+	/*
+	 * runs only the estimation step for a reading obtained elsewhere.
+	 * (rX,rY) = (-1,-1) means "nothing". The simulated robot does not move.
+	 */
+	public void observe(int rX, int rY) {
+		sens[0] = rX;
+		sens[1] = rY;
+		posEstimate();
+	}
+
+	@Override
+	public int[] getCurrentTruePosition() {
+		int[] posXY = new int[2];
+		posXY[0] = robot.getPosition()[0];
+		posXY[1] = robot.getPosition()[1];
+
+		return posXY;
+	}
+
+	@Override
+	public int[] getCurrentReading() {
+		return sens;
+	}
+
+	@Override
+	public double getCurrentProb(int x, int y) {
+		double probability = 0;
+
+		for(int h = 0; h < head; h++){
+			probability += f[mapT(x,y,h)];
+		}
+		return probability;
+	}
+
+	@Override
+	public double getOrXY(int rX, int rY, int x, int y, int h) {
+		return O.get(rX,rY,x,y);
+	}
+
+	@Override
+	public double getTProb(int x, int y, int h, int nX, int nY, int nH) {
+		return T.get(mapT(x,y,h),mapT(nX,nY,nH));
+	}
+
+	@Override
+	public void getCurrentProbs(double[] probs) {
+		double probability;
+
+		Arrays.fill(probs, 0, rows*cols, 0);
+		for(int row = fWindow[0]; row < fWindow[1]; row++){
+			for(int col = fWindow[2]; col < fWindow[3]; col++){
+				probability = 0;
+				for(int i = mapT(row,col,0); i < mapT(row,col,head); i++){
+					probability += f[i];
+				}
+				probs[row*cols + col] = probability;
+			}
+		}
+	}
+
+	@Override
+	public void getTRow(int x, int y, int h, double[] probs) {
+		T.getRow(mapT(x,y,h), probs);
+	}
+
+	@Override
+	public void getOrVector(int rX, int rY, double[] probs) {
+		O.getDiagonal(rX, rY, probs);
+	}
+}
@@ -0,0 +1,41 @@
+package model;
+
+/*
+ * One step of the forward algorithm, f(t+1) = alpha*O_r*T'*f(t), split so that it can be
+ * computed for any rectangle of the grid. Implementations must not keep state between calls,
+ * so they can be shared and called from several threads at once. The single-threaded ones do not
+ * allocate either; ParallelForwardFilter creates a few small tasks per call it splits.
+ */
+public interface ForwardFilter {
+
+	/*
+	 * writes the unnormalised entries of O_r*T'*f for every state of the cells in
+	 * rows [fromRow,toRow) and columns [fromCol,toCol) into next, and returns their sum.
+	 * (rX,rY) is the sensor reading r, or (-1,-1) for "nothing".
+	 */
+	public double propagate(double[] f, double[] next, int rX, int rY, int fromRow, int toRow, int fromCol, int toCol);
+
+	/*
+	 * multiplies the entries [from,to) of v by alpha, i.e. normalises them once the sum
+	 * returned by propagate is known
+	 */
+	public default void scale(double[] v, double alpha, int from, int to){
+		for(int i = from; i < to; i++){
+			v[i] *= alpha;
+		}
+	}
+
+	/*
+	 * returns a VectorForwardFilter for the model if the jdk.incubator.vector module is
+	 * available (and its classes compiled), or the scalar SparseForwardFilter otherwise
+	 */
+	public static ForwardFilter vectorized(int rows, int cols, TransitionModel T, ObservationModel O){
+		try {
+			return (ForwardFilter) Class.forName("model.VectorForwardFilter")
+					.getConstructor(int.class, int.class, TransitionModel.class, ObservationModel.class)
+					.newInstance(rows, cols, T, O);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return new SparseForwardFilter(rows, cols, T, O);
+		}
+	}
+}
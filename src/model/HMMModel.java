@@ -0,0 +1,115 @@
+package model;
+
+/*
+ * Transition and observation models of a rows*cols grid with four headings. Once built it is
+ * never modified, so a single instance can be shared by any number of estimators and threads;
+ * each estimator only keeps its own belief.
+ */
+public class HMMModel {
+
+	private final int rows, cols, head;
+	private final boolean matrixFree;
+	private final TransitionModel T;
+	private final ObservationModel O;
+	//Worked out the first time it is asked for, 0 until then
+	private volatile long fingerprint;
+
+	public HMMModel(int rows, int cols){
+		this(rows, cols, false, false);
+	}
+
+	/*
+	 * matrixFree works out T from the grid geometry instead of storing it, and
+	 * denseObservations precomputes the full table of observation matrices
+	 * (O(rows^2*cols^2) memory) instead of working out each entry from the sensor model.
+	 */
+	public HMMModel(int rows, int cols, boolean matrixFree, boolean denseObservations){
+		this(rows, cols, matrixFree, denseObservations, ObservationModel.defaultKernel());
+	}
+
+	/*
+	 * sensorKernel[d] is the probability that the sensor reports a cell d cells away
+	 * from the true one, see ObservationModel. Both transition models need at least two rows
+	 * and two columns.
+	 */
+	public HMMModel(int rows, int cols, boolean matrixFree, boolean denseObservations, double[] sensorKernel){
+		if(rows < 2 || cols < 2)
+			throw new IllegalArgumentException("The grid needs at least 2 rows and 2 columns, not " + rows + "x" + cols);
+		this.rows = rows;
+		this.cols = cols;
+		this.head = 4;
+		this.matrixFree = matrixFree;
+
+		O = new ObservationModel(rows, cols, sensorKernel, denseObservations);
+		if(matrixFree){
+			T = new StencilTransitionModel(rows, cols);
+		} else {
+			//T only keeps the (at most four) reachable neighbours of each state
+			T = new SparseTransitionModel(rows, cols);
+		}
+	}
+
+	public int getNumRows() {
+		return rows;
+	}
+	public int getNumCols() {
+		return cols;
+	}
+	public int getNumHead() {
+		return head;
+	}
+	public int getNumStates() {
+		return rows*cols*head;
+	}
+	public TransitionModel getTransitionModel() {
+		return T;
+	}
+	public ObservationModel getObservationModel() {
+		return O;
+	}
+
+	/*
+	 * 64 bit FNV-1a hash of the grid size, the sensor kernel and every entry of T, so two models
+	 * with the same fingerprint give the same estimates. Both engines of T hash alike.
+	 */
+	public long getFingerprint() {
+		long hash = fingerprint;
+
+		if(hash == 0){
+			hash = 0xcbf29ce484222325L;
+			hash = mix(hash, rows);
+			hash = mix(hash, cols);
+			hash = mix(hash, head);
+			for(double k : O.getKernel()){
+				hash = mix(hash, Double.doubleToLongBits(k));
+			}
+			for(int from = 0; from < T.getNumStates(); from++){
+				for(int k = 0; k < T.degree(from); k++){
+					hash = mix(hash, T.target(from,k));
+					hash = mix(hash, Double.doubleToLongBits(T.prob(from,k)));
+				}
+			}
+			fingerprint = hash;
+		}
+		return hash;
+	}
+
+	//Feeds the 8 bytes of value into an FNV-1a hash
+	private static long mix(long hash, long value) {
+		for(int i = 0; i < 8; i++){
+			hash ^= (value >>> 8*i) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/*
+	 * returns the default forward step engine for this model. Filters hold no state,
+	 * so the result can be shared as well.
+	 */
+	public ForwardFilter newForwardFilter() {
+		if(matrixFree)
+			return new StencilForwardFilter(rows, cols, O);
+		return new SparseForwardFilter(rows, cols, T, O);
+	}
+}
@@ -18,48 +18,177 @@
 
 package model;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Random;
-import java.util.stream.Collectors;
-import java.util.stream.DoubleStream;
+import java.util.random.RandomGenerator;
 
 import control.EstimatorInterface;
 
 public class HMMPredictor implements EstimatorInterface {
 
+	/*
+	 * A snapshot is a 64 byte header, the int SNAPSHOT_MAGIC ("HMMS"), SNAPSHOT_VERSION, rows,
+	 * cols, head, the long model fingerprint, the window of f (4 ints), the true pose (3 ints)
+	 * and the last reading (2 ints), followed by the rows*cols*head doubles of f, all little-endian
+	 */
+	public static final int SNAPSHOT_MAGIC = 0x484D4D53;
+	public static final int SNAPSHOT_VERSION = 1;
+	public static final int SNAPSHOT_HEADER_BYTES = 64;
+
+	//Pruning is skipped for a step that would keep less than this fraction of the mass
+	private static final double MIN_KEPT = 1e-9;
+
 	private int rows,cols,head;
-	private double[] f,T[],O[];
-	int[] pos;
+	private HMMModel model;
+	private double[] f,fNext;
+	//Cells of f and fNext that may hold non-zero values, as {fromRow,toRow,fromCol,toCol}
+	private int[] fWindow,nextWindow;
+	private TransitionModel T;
+	private ObservationModel O;
+	private ForwardFilter filter;
+	private RobotSimulator robot;
+	private StepMetrics metrics;
+	//Pruning: states below epsilon are dropped, 0 when off. active lists the cells of f
+	//with non-zero entries, stale those of fNext, both sorted
+	private double epsilon, prunedMass, totalPrunedMass;
+	private int[] active, stale, candidates, mark;
+	private int activeCount, staleCount, stamp;
+	private long reseeds;
 	int[] sens;
-	Random random;
 	
 	public HMMPredictor(int rows, int cols){
-		this.rows = rows;
-		this.cols = cols;
-		this.head = 4;
+		this(rows, cols, false);
+	}
+	
+	/*
+	 * matrixFree selects the stencil engine, which works out T from the grid geometry
+	 * instead of storing it. Both engines give the same estimates.
+	 */
+	public HMMPredictor(int rows, int cols, boolean matrixFree){
+		this(rows, cols, matrixFree, false);
+	}
+	
+	/*
+	 * denseObservations precomputes the full table of observation matrices instead of
+	 * working out each entry from the sensor model. It needs O(rows^2*cols^2) memory.
+	 */
+	public HMMPredictor(int rows, int cols, boolean matrixFree, boolean denseObservations){
+		this(new HMMModel(rows, cols, matrixFree, denseObservations));
+	}
+	
+	/*
+	 * builds an estimator on a model that may be shared with others; only the
+	 * belief and the simulated robot belong to this instance
+	 */
+	public HMMPredictor(HMMModel model){
+		this(model, new Random());
+	}
+	
+	/*
+	 * random drives the simulated robot, e.g. a seeded SplittableRandom for reproducible runs
+	 */
+	public HMMPredictor(HMMModel model, RandomGenerator random){
+		this.rows = model.getNumRows();
+		this.cols = model.getNumCols();
+		this.head = model.getNumHead();
+		this.model = model;
 		
-		T = new double[rows*cols*head][rows*cols*head];
-		//Each of the Os matrices is represented by an array [rows*cols*head]. head could be avoided, but helps making multiplication simpler
-		//As we have [rows*cols +1] Os, we store the info in a matrix.
-		O = new double[rows*cols +1][rows*cols*head];
-		generateT(T);
-		generateOs(O);
+		T = model.getTransitionModel();
+		O = model.getObservationModel();
+		filter = model.newForwardFilter();
 		
 		f = new double[rows*cols*head];
+		fNext = new double[rows*cols*head];
 		Arrays.fill(f,1/((double)rows*(double)cols*(double)head));
+		fWindow = new int[]{0,rows,0,cols};
+		nextWindow = new int[]{0,0,0,0};
 		
-        random = new Random();
-        sens = new int[2];
-		pos = new int[3];
-		pos[0] = random.nextInt(rows);
-		pos[1] = random.nextInt(cols);
-		pos[2] = random.nextInt(head);
-				
+		robot = new RobotSimulator(rows, cols, T, O, random);
+		sens = new int[2];
+	}
+	
+	public TransitionModel getTransitionModel() {
+		return T;
+	}
+	public ObservationModel getObservationModel() {
+		return O;
+	}
+	public ForwardFilter getForwardFilter() {
+		return filter;
+	}
+	/*
+	 * replaces the engine used for the forward step, e.g. to wrap the current one
+	 * in a ParallelForwardFilter. It must work on the same model as this predictor.
+	 */
+	public void setForwardFilter(ForwardFilter filter) {
+		this.filter = filter;
+	}
+	
+	public StepMetrics getMetrics() {
+		return metrics;
+	}
+	/*
+	 * starts recording per-phase latencies and belief gauges of update() into metrics,
+	 * or stops it if metrics is null
+	 */
+	public void setMetrics(StepMetrics metrics) {
+		this.metrics = metrics;
 	}
 	
+	/*
+	 * keeps only the states whose probability is above epsilon after each step and renormalises,
+	 * so a step only visits the cells that still hold some probability and their neighbours and
+	 * its cost follows the spread of the belief instead of the size of the grid. 0 turns it off.
+	 */
+	public void setPruningThreshold(double epsilon) {
+		if(epsilon < 0 || epsilon >= 1)
+			throw new IllegalArgumentException("The pruning threshold must be in [0,1)");
+		this.epsilon = epsilon;
+		if(epsilon > 0)
+			track();
+	}
+	public double getPruningThreshold() {
+		return epsilon;
+	}
+
+	/*
+	 * probability mass dropped by pruning at the last step; before the next reading the belief
+	 * is within L1 distance twice this of the one without that pruning. It is 1 when no state
+	 * left could explain the reading and the belief started over from the reading alone.
+	 */
+	public double getPrunedMass() {
+		return prunedMass;
+	}
+	/*
+	 * mass dropped since pruning was turned on. It adds up the error of every step, although
+	 * later readings can make an early error grow or shrink.
+	 */
+	public double getTotalPrunedMass() {
+		return totalPrunedMass;
+	}
+	/*
+	 * number of readings that no state of the belief could explain (a glitch in a log, or
+	 * everything that could have was pruned), after which the belief started over from the
+	 * reading alone
+	 */
+	public long getReseeds() {
+		return reseeds;
+	}
+	/*
+	 * number of cells holding some probability, i.e. visited (with their neighbours) by the
+	 * next step when pruning is on
+	 */
+	public int getActiveCells() {
+		return activeCount;
+	}
+
 	@Override
 	public int getNumRows() {
 		return this.rows;
@@ -77,365 +206,240 @@ public class HMMPredictor implements EstimatorInterface {
 	private int mapT(int row, int col, int head){
 		return col*4 + row*this.cols*4 + head;
 	}
-	//Find the proper matrix O
-	private int mapO(int row, int col){
-		if(row < 0 || col < 0)
-			return cols*rows;
-		else
-			return col + row*this.cols;
-	}
-
-	private int moveNorth(int row, int col){
-		return col*4 + (row-1)*this.cols*4;
-	}
-	private int moveEast(int row, int col){
-		return (col+1)*4 + row*this.cols*4 + 1;
-	}
-	private int moveSouth(int row, int col){
-		return col*4 + (row+1)*this.cols*4 + 2;
-	}
-	private int moveWest(int row, int col){
-		return (col-1)*4 + row*this.cols*4 + 3;
-	}
-	private int faceNorth(int row, int col){
-		return mapT(row,col,0);
-	}
-	private int faceEast(int row, int col){
-		return mapT(row,col,1);
-	}
-	private int faceSouth(int row, int col){
-		return mapT(row,col,2);
-	}
-	private int faceWest(int row, int col){
-		return mapT(row,col,3);
-	}
-	
-	private void generateCorners(double[][] T){
-		double[] row = new double[rows*cols*head];
-		int i,j;
-		
-		//Top left
-		i = 0;
-		j = 0;
-	
-		row[moveEast(i,j)] = row[moveSouth(i,j)] = 0.5;
-		System.arraycopy(row,0,T[faceNorth(i,j)],0,row.length);
-		System.arraycopy(row,0,T[faceWest(i,j)],0,row.length);
-		
-		row[moveEast(i,j)] = 0.3;
-		row[moveSouth(i,j)] = 0.7;
-		System.arraycopy(row,0,T[faceSouth(i,j)],0,row.length);
-		
-		row[moveSouth(i,j)] = 0.3;
-		row[moveEast(i,j)] = 0.7;
-		System.arraycopy(row,0,T[faceEast(i,j)],0,row.length);		
-		
-		row[moveEast(i,j)] = row[moveSouth(i,j)] = 0;
-		//Top right
-		j = cols - 1;
-		
-		row[moveSouth(i,j)] = row[moveWest(i,j)] = 0.5;
-		System.arraycopy(row,0,T[faceNorth(i,j)],0,row.length);
-		System.arraycopy(row,0,T[faceEast(i,j)],0,row.length);
-		
-		row[moveWest(i,j)] = 0.7;
-		row[moveSouth(i,j)] = 0.3;
-		System.arraycopy(row,0,T[faceWest(i,j)],0,row.length);
-		
-		row[moveWest(i,j)] = 0.3;
-		row[moveSouth(i,j)] = 0.7;
-		System.arraycopy(row,0,T[faceSouth(i,j)],0,row.length);
-		
-
-		row[moveWest(i,j)] = row[moveSouth(i,j)] = 0;
-		//Bottom right
-		i = rows - 1;
-		
-		row[moveWest(i,j)] = row[moveNorth(i,j)] = 0.5;
-		System.arraycopy(row,0,T[faceSouth(i,j)],0,row.length);
-		System.arraycopy(row,0,T[faceEast(i,j)],0,row.length);
-		
-		row[moveWest(i,j)] = 0.3;
-		row[moveNorth(i,j)] = 0.7;
-		System.arraycopy(row,0,T[faceNorth(i,j)],0,row.length);
-		
-		row[moveNorth(i,j)] = 0.3;
-		row[moveWest(i,j)] = 0.7;
-		System.arraycopy(row,0,T[faceWest(i,j)],0,row.length);
-		
-		
-		row[moveWest(i,j)] = row[moveNorth(i,j)] = 0;
-		//Bottom left
-		j = 0;
-		
-		row[moveEast(i,j)] = row[moveNorth(i,j)] = 0.5;
-		System.arraycopy(row,0,T[faceSouth(i,j)],0,row.length);
-		System.arraycopy(row,0,T[faceWest(i,j)],0,row.length);
-		
-		row[moveEast(i,j)] = 0.3;
-		row[moveNorth(i,j)] = 0.7;
-		System.arraycopy(row,0,T[faceNorth(i,j)],0,row.length);
-		
-		row[moveNorth(i,j)] = 0.3;
-		row[moveEast(i,j)] = 0.7;
-		System.arraycopy(row,0,T[faceEast(i,j)],0,row.length);
-		
-	}
-	private void generateWalls(double[][] T){
-		int i,j;
-		double[] row = new double[rows*cols*head];
-		
-		//Top row
-		i = 0;
-		for(j = 1; j < cols - 1; j++){
-			row[moveEast(i,j)] = row[moveSouth(i,j)] = row[moveWest(i,j)] = 0.33;
-			System.arraycopy(row,0,T[faceNorth(i,j)],0,row.length);
-			
-			row[moveWest(i,j)] = row[moveSouth(i,j)] = 0.15;
-			row[moveEast(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceEast(i,j)],0,row.length);
-			
-			row[moveWest(i,j)] = row[moveEast(i,j)] = 0.15;
-			row[moveSouth(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceSouth(i,j)],0,row.length);
-			
-			row[moveEast(i,j)] = row[moveSouth(i,j)] = 0.15;
-			row[moveWest(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceWest(i,j)],0,row.length);
 
-			row[moveEast(i,j)] = row[moveSouth(i,j)] = row[moveWest(i,j)] = 0;
+	private void posEstimate(){
+		if(epsilon > 0){
+			prunedEstimate();
+			return;
 		}
-		
-		//Bottom row
-		i = rows -1;
-		for(j = 1; j < cols - 1; j++){
-			row[moveEast(i,j)] = row[moveNorth(i,j)] = row[moveWest(i,j)] = 0.33;
-			System.arraycopy(row,0,T[faceSouth(i,j)],0,row.length);
-			
-			row[moveWest(i,j)] = row[moveNorth(i,j)] = 0.15;
-			row[moveEast(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceEast(i,j)],0,row.length);
-			
-			row[moveWest(i,j)] = row[moveEast(i,j)] = 0.15;
-			row[moveNorth(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceNorth(i,j)],0,row.length);
-			
-			row[moveEast(i,j)] = row[moveNorth(i,j)] = 0.15;
-			row[moveWest(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceWest(i,j)],0,row.length);
-
-			row[moveEast(i,j)] = row[moveNorth(i,j)] = row[moveWest(i,j)] = 0;
+		//What we need to do is ft+1 = O*T'*ft;
+		//The filter writes the new entries into fNext and then the two buffers are swapped,
+		//so a step does not allocate anything
+		double[] swap;
+		int[] swapWindow;
+		double sumf, alpha;
+		int fromRow = 0, toRow = rows, fromCol = 0, toCol = cols;
+		
+		//Any real reading rules out every state out of the sensor range from it, so only
+		//that window is computed and the rest of fNext is cleared
+		if(sens[0] >= 0 && sens[1] >= 0){
+			fromRow = Math.max(0, sens[0] - O.getRange());
+			toRow = Math.min(rows, sens[0] + O.getRange() + 1);
+			fromCol = Math.max(0, sens[1] - O.getRange());
+			toCol = Math.min(cols, sens[1] + O.getRange() + 1);
+			clear(fNext, nextWindow);
 		}
-		
-		//Left column
-		j = 0;
-		for(i = 1; i < cols - 1; i++){
-			row[moveEast(i,j)] = row[moveSouth(i,j)] = row[moveNorth(i,j)] = 0.33;
-			System.arraycopy(row,0,T[faceWest(i,j)],0,row.length);
-			
-			row[moveNorth(i,j)] = row[moveSouth(i,j)] = 0.15;
-			row[moveEast(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceEast(i,j)],0,row.length);
-			
-			row[moveNorth(i,j)] = row[moveEast(i,j)] = 0.15;
-			row[moveSouth(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceSouth(i,j)],0,row.length);
-			
-			row[moveEast(i,j)] = row[moveSouth(i,j)] = 0.15;
-			row[moveNorth(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceNorth(i,j)],0,row.length);
-
-			row[moveEast(i,j)] = row[moveSouth(i,j)] = row[moveNorth(i,j)] = 0;
+		sumf = filter.propagate(f, fNext, sens[0], sens[1], fromRow, toRow, fromCol, toCol);
+		
+		if(sumf > 0){
+			//Corrrect f values
+			alpha = 1/sumf;
+			if(fromCol == 0 && toCol == cols){
+				filter.scale(fNext, alpha, fromRow*cols*head, toRow*cols*head);
+			} else {
+				for(int row = fromRow; row < toRow; row++){
+					filter.scale(fNext, alpha, (row*cols + fromCol)*head, (row*cols + toCol)*head);
+				}
+			}
+			nextWindow[0] = fromRow;
+			nextWindow[1] = toRow;
+			nextWindow[2] = fromCol;
+			nextWindow[3] = toCol;
+		} else {
+			//No state explains the reading, e.g. a glitch in a log; the window is all zero
+			reseed(sens[0] >= 0 && sens[1] >= 0);
 		}
 		
-		//Right column
-		j = cols - 1;
-		for(i = 1; i < cols - 1; i++){
-			row[moveWest(i,j)] = row[moveSouth(i,j)] = row[moveNorth(i,j)] = 0.33;
-			System.arraycopy(row,0,T[faceEast(i,j)],0,row.length);
-			
-			row[moveNorth(i,j)] = row[moveSouth(i,j)] = 0.15;
-			row[moveWest(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceWest(i,j)],0,row.length);
-			
-			row[moveNorth(i,j)] = row[moveWest(i,j)] = 0.15;
-			row[moveSouth(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceSouth(i,j)],0,row.length);
-			
-			row[moveWest(i,j)] = row[moveSouth(i,j)] = 0.15;
-			row[moveNorth(i,j)] = 0.7;
-			System.arraycopy(row,0,T[faceNorth(i,j)],0,row.length);
-
-			row[moveWest(i,j)] = row[moveSouth(i,j)] = row[moveNorth(i,j)] = 0;
-		}
+		swap = f;
+		f = fNext;
+		fNext = swap;
+		swapWindow = fWindow;
+		fWindow = nextWindow;
+		nextWindow = swapWindow;
 	}
-	private void generateT(double[][] T){
-		double[] row = new double[rows*cols*head];
+	
+	//Same as posEstimate, only for the cells reachable from the active ones, pruning the
+	//new entries below epsilon
+	private void prunedEstimate(){
+		boolean reading = sens[0] >= 0 && sens[1] >= 0;
+		int range = O.getRange(), n = 0, cell, row, col, next, end, i;
+		int[] swapList, swapWindow;
+		double[] swap;
+		double sumf = 0, threshold, pruned = 0, survived = 0, alpha;
+		boolean kept;
+		
+		//T always moves to a neighbouring cell; a real reading also rules out every cell
+		//out of the sensor range from it
+		stamp++;
+		for(int a = 0; a < activeCount; a++){
+			row = active[a]/cols;
+			col = active[a]%cols;
+			for(int d = 0; d < 4; d++){
+				next = (row + StencilTransitionModel.DROW[d])*cols + col + StencilTransitionModel.DCOL[d];
+				if(row + StencilTransitionModel.DROW[d] < 0 || row + StencilTransitionModel.DROW[d] >= rows
+						|| col + StencilTransitionModel.DCOL[d] < 0 || col + StencilTransitionModel.DCOL[d] >= cols
+						|| mark[next] == stamp)
+					continue;
+				if(reading && (Math.abs(next/cols - sens[0]) > range || Math.abs(next%cols - sens[1]) > range))
+					continue;
+				mark[next] = stamp;
+				candidates[n++] = next;
+			}
+		}
+		Arrays.sort(candidates, 0, n);
 		
-		generateCorners(T);
-		generateWalls(T);
+		for(int a = 0; a < staleCount; a++){
+			Arrays.fill(fNext, stale[a]*head, (stale[a] + 1)*head, 0);
+		}
+		//One call for each run of consecutive cells in a row
+		for(int a = 0; a < n; a = end){
+			row = candidates[a]/cols;
+			for(end = a + 1; end < n && candidates[end] == candidates[end - 1] + 1 && candidates[end]/cols == row; end++);
+			sumf += filter.propagate(f, fNext, sens[0], sens[1], row, row + 1, candidates[a]%cols, candidates[a]%cols + end - a);
+		}
 		
-		//Middle points
-		for(int i  = 1; i < rows - 1; i++){	
-			for(int j = 1; j < cols - 1; j++){
-				row[moveEast(i,j)] = row[moveSouth(i,j)] = row[moveWest(i,j)] = 0.1;
-				row[moveNorth(i,j)] = 0.7;
-				System.arraycopy(row,0,T[faceNorth(i,j)],0,row.length);
-				
-				row[moveNorth(i,j)] = row[moveWest(i,j)] = row[moveSouth(i,j)] = 0.1;
-				row[moveEast(i,j)] = 0.7;
-				System.arraycopy(row,0,T[faceEast(i,j)],0,row.length);
-				
-				row[moveNorth(i,j)] = row[moveEast(i,j)] = row[moveWest(i,j)] = 0.1;
-				row[moveSouth(i,j)] = 0.7;
-				System.arraycopy(row,0,T[faceSouth(i,j)],0,row.length);
-				
-				row[moveNorth(i,j)] = row[moveEast(i,j)] = row[moveSouth(i,j)] = 0.1;
-				row[moveWest(i,j)] = 0.7;
-				System.arraycopy(row,0,T[faceWest(i,j)],0,row.length);
-				
-				row[moveNorth(i,j)] = row[moveEast(i,j)] = row[moveSouth(i,j)] = row[moveWest(i,j)] = 0;
+		staleCount = 0;
+		nextWindow[0] = rows;
+		nextWindow[1] = 0;
+		nextWindow[2] = cols;
+		nextWindow[3] = 0;
+		if(sumf > 0){
+			//Prune, unless that would leave (next to) nothing, e.g. while the belief is still
+			//flatter than epsilon. The surviving mass is summed on its own, as sumf - pruned
+			//can round to a small non-zero value when nothing survives
+			threshold = epsilon*sumf;
+			for(int a = 0; a < n; a++){
+				for(i = candidates[a]*head; i < (candidates[a] + 1)*head; i++){
+					if(fNext[i] <= threshold)
+						pruned += fNext[i];
+					else
+						survived += fNext[i];
+				}
+			}
+			if(survived <= MIN_KEPT*sumf){
+				threshold = 0;
+				pruned = 0;
+				survived = sumf;
+			}
+			alpha = 1/survived;
+			for(int a = 0; a < n; a++){
+				cell = candidates[a];
+				kept = false;
+				for(i = cell*head; i < (cell + 1)*head; i++){
+					if(fNext[i] <= threshold){
+						fNext[i] = 0;
+					} else {
+						fNext[i] *= alpha;
+						kept = true;
+					}
+				}
+				if(kept)
+					keep(cell);
 			}
+			prunedMass = pruned/sumf;
+		} else {
+			//The states that could explain the reading were pruned earlier
+			reseed(reading);
+			prunedMass = 1;
 		}
+		totalPrunedMass += prunedMass;
+		
+		swap = f;
+		f = fNext;
+		fNext = swap;
+		swapWindow = fWindow;
+		fWindow = nextWindow;
+		nextWindow = swapWindow;
+		swapList = active;
+		active = stale;
+		stale = swapList;
+		n = activeCount;
+		activeCount = staleCount;
+		staleCount = n;
 	}
 	
-	private void generateOs(double[][] O){
-		int diffX, diffY;
-		//First two done to iterate through the O matrices
-		for(int Oi = 0; Oi < rows; Oi++){
-			for(int Oj = 0; Oj < cols; Oj++){
-				//Now we start checking each matrix
-				for(int i = 0; i < rows; i++){
-					for(int j = 0; j < cols; j++){
-						diffX = Math.abs(Oi - i);
-						diffY = Math.abs(Oj - j);
-						if(diffX == 0 && diffY == 0){
-							for(int h = 0; h < head; h++){
-								O[mapO(Oi,Oj)][mapT(i,j,h)] = 0.1;
-							}
-						} else
-							if(diffX <= 1 && diffY <= 1){
-								for(int h = 0; h < head; h++){
-									O[mapO(Oi,Oj)][mapT(i,j,h)] = 0.05;
-								}
-							} else 
-								if(diffX <= 2 && diffY <= 2){
-									for(int h = 0; h < head; h++){
-										O[mapO(Oi,Oj)][mapT(i,j,h)] = 0.025;
-									}
-								}else
-									for(int h = 0; h < head; h++){
-										O[mapO(Oi,Oj)][mapT(i,j,h)] = 0;
-									}
-					}
-				}
+	//Adds cell to the cells of fNext holding some probability
+	private void keep(int cell){
+		stale[staleCount++] = cell;
+		nextWindow[0] = Math.min(nextWindow[0], cell/cols);
+		nextWindow[1] = Math.max(nextWindow[1], cell/cols + 1);
+		nextWindow[2] = Math.min(nextWindow[2], cell%cols);
+		nextWindow[3] = Math.max(nextWindow[3], cell%cols + 1);
+	}
+
+	//No state left explains the reading, so fNext starts over from the reading alone: every
+	//cell within sensor range of it (every cell for "nothing") in proportion to O_r.
+	//fNext is all zero and no cell is kept when this is called
+	private void reseed(boolean reading){
+		int range = O.getRange(), fromRow = 0, toRow = rows, fromCol = 0, toCol = cols;
+		double sum = 0, probability;
+		boolean uniform;
+
+		reseeds++;
+		if(reading){
+			fromRow = Math.max(0, sens[0] - range);
+			toRow = Math.min(rows, sens[0] + range + 1);
+			fromCol = Math.max(0, sens[1] - range);
+			toCol = Math.min(cols, sens[1] + range + 1);
+		}
+		for(int row = fromRow; row < toRow; row++){
+			for(int col = fromCol; col < toCol; col++){
+				sum += O.get(sens[0], sens[1], row, col)*head;
 			}
 		}
-		
-		//Initialize the sensor error matrix
-		List<Object> Olist; 
-		for(int i = 0; i < rows; i++){
-			for(int j = 0; j < cols; j++){
-				for(int h = 0; h < head; h++){
-					Olist = DoubleStream.of(O[mapO(i,j)]).boxed().collect(Collectors.toList());
-					O[rows*cols][mapT(i,j,h)] = 0.9 - 0.05*Collections.frequency(Olist, new Double(0.05))/4 - 0.025*Collections.frequency(Olist, new Double(0.025))/4;  
+		//A reading no cell can give, e.g. "nothing" from a sensor that always reports, tells nothing
+		uniform = sum == 0;
+		if(uniform)
+			sum = (toRow - fromRow)*(toCol - fromCol)*head;
+		for(int row = fromRow; row < toRow; row++){
+			for(int col = fromCol; col < toCol; col++){
+				probability = uniform ? 1 : O.get(sens[0], sens[1], row, col);
+				if(probability > 0){
+					Arrays.fill(fNext, mapT(row,col,0), mapT(row,col,head), probability/sum);
+					if(epsilon > 0)
+						stale[staleCount++] = row*cols + col;
 				}
 			}
 		}
+		nextWindow[0] = fromRow;
+		nextWindow[1] = toRow;
+		nextWindow[2] = fromCol;
+		nextWindow[3] = toCol;
 	}
 
-	private void move(){
-		double[] probCurrentPos = T[mapT(pos[0],pos[1],pos[2])];
-		Movement choosenMov;
-		ArrayList<Movement> movs = new ArrayList<Movement>(4);
-		
-		for(int i = 0; i < rows; i++){
-			for(int j = 0; j < cols; j++){
+	//Builds the list of active cells from f and clears fNext, to start pruning
+	private void track(){
+		if(active == null){
+			active = new int[rows*cols];
+			stale = new int[rows*cols];
+			candidates = new int[rows*cols];
+			mark = new int[rows*cols];
+		}
+		clear(fNext, nextWindow);
+		nextWindow[0] = nextWindow[1] = nextWindow[2] = nextWindow[3] = 0;
+		staleCount = 0;
+		activeCount = 0;
+		for(int row = fWindow[0]; row < fWindow[1]; row++){
+			for(int col = fWindow[2]; col < fWindow[3]; col++){
 				for(int h = 0; h < head; h++){
-					if(probCurrentPos[mapT(i,j,h)] != 0){
-						movs.add(new Movement(probCurrentPos[mapT(i,j,h)],i,j,h));
+					if(f[mapT(row,col,h)] != 0){
+						active[activeCount++] = row*cols + col;
+						break;
 					}
 				}
 			}
 		}
-		
-		//Choose movement from probabilities
-		//Based on stack overflow code proposal
-	    random = new Random();
-        double index = random.nextDouble()*100;
-        double sum = 0;
-        int i=0;
-        
-        try{
-        	while(sum < index ) {
-        		sum = sum + movs.get(i++).relativeProb();
-        	}
-            choosenMov = movs.get(Math.max(0,i-1));
-        }
-        catch(IndexOutOfBoundsException e){
-        	choosenMov = movs.get(movs.size()-1);
-        }
-        pos = choosenMov.getPos();
-	}
-
-	private void getSensorReading(){
-		Reading chosenRead;
-		ArrayList<Reading> posReading = new ArrayList<Reading>();
-		double probability = 0;
-		
-		for(int i = 0; i < rows; i++){
-			for(int j = 0; j < cols; j++){
-				probability = O[mapO(i,j)][mapT(pos[0],pos[1],pos[2])];
-				
-				if(probability != 0)
-					posReading.add(new Reading(probability,i,j));
-			}
-		}
-		probability = O[rows*cols][mapT(pos[0],pos[1],pos[2])];
-		posReading.add(new Reading(probability,-1,-1));
-		
-		//Based on stack overflow code proposal
-	    random = new Random();
-        double index = random.nextDouble()*100;
-        double sum = 0;
-        int i=0;
-        
-        try{
-        	while(sum < index ) {
-        		sum = sum + posReading.get(i++).relativeProb();
-        	}
-            chosenRead = posReading.get(Math.max(0,i-1));
-        }
-        catch(IndexOutOfBoundsException e){
-        	chosenRead = posReading.get(posReading.size() - 1);
-        }
-        sens = chosenRead.getPos();
+		prunedMass = totalPrunedMass = 0;
 	}
 	
-	private void posEstimate(){
-		//What we need to do is ft+1 = O*T'*ft;
-		double[] currentO = O[mapO(sens[0],sens[1])], newf = new double[rows*cols*head];
-		double[][] OTaux = new double[rows*cols*head][rows*cols*head];
-		double sumf = 0, alpha;
-		
-		for(int i = 0; i < rows*cols*head; i++){
-			for(int j = 0; j < rows*cols*head; j++){
-				OTaux[i][j] = T[j][i]*currentO[i];
-			}
-		}
-		
-		for(int i = 0; i < rows*cols*head; i++){
-			newf[i] = 0;
-			for(int j = 0; j < rows*cols*head; j++){
-				newf[i] += OTaux[i][j]*f[j];
-			}
-			sumf += newf[i];
+	//Set to zero the cells of v inside window
+	private void clear(double[] v, int[] window){
+		if(window[0] == 0 && window[1] == rows && window[2] == 0 && window[3] == cols){
+			Arrays.fill(v, 0);
+			return;
 		}
-		
-		//Corrrect f values
-		alpha = 1/sumf;
-		for(int i = 0; i < rows*cols*head; i++){
-			f[i] = alpha*newf[i];
+		for(int row = window[0]; row < window[1]; row++){
+			Arrays.fill(v, (row*cols + window[2])*head, (row*cols + window[3])*head, 0);
 		}
 	}
 	/*
@@ -445,11 +449,160 @@ public class HMMPredictor implements EstimatorInterface {
 	 */
 	@Override
 	public void update() {
-		move();
-		getSensorReading();
+		if(metrics != null && metrics.isEnabled()){
+			timedUpdate();
+			return;
+		}
+		robot.move();
+		robot.sense();
+		sens[0] = robot.getReading()[0];
+		sens[1] = robot.getReading()[1];
 		posEstimate();
 
 	}
+	
+	//Same as update, recording every phase into metrics
+	private void timedUpdate() {
+		long start, moved, sensed, estimated;
+		
+		metrics.startStep();
+		start = System.nanoTime();
+		robot.move();
+		moved = System.nanoTime();
+		robot.sense();
+		sens[0] = robot.getReading()[0];
+		sens[1] = robot.getReading()[1];
+		sensed = System.nanoTime();
+		posEstimate();
+		estimated = System.nanoTime();
+		
+		metrics.record(StepMetrics.MOVE, moved - start);
+		metrics.record(StepMetrics.SENSE, sensed - moved);
+		metrics.record(StepMetrics.ESTIMATE, estimated - sensed);
+		metrics.record(StepMetrics.STEP, estimated - start);
+		if(metrics.endStep())
+			recordBelief();
+	}
+	
+	//Entropy of the belief over states (in bits) and probability of the most likely cell
+	private void recordBelief() {
+		double entropy = 0, peak = 0, cell;
+		
+		for(int i = 0; i < rows*cols*head; i++){
+			if(f[i] > 0)
+				entropy -= f[i]*Math.log(f[i]);
+		}
+		for(int x = 0; x < rows; x++){
+			for(int y = 0; y < cols; y++){
+				cell = getCurrentProb(x,y);
+				if(cell > peak)
+					peak = cell;
+			}
+		}
+		metrics.recordBelief(entropy/Math.log(2), peak);
+	}
+	
+	/*
+	 * runs only the estimation step for a reading obtained elsewhere, e.g. from a log or
+	 * another simulator. (rX,rY) = (-1,-1) means "nothing". The simulated robot does not move.
+	 */
+	public void observe(int rX, int rY) {
+		sens[0] = rX;
+		sens[1] = rY;
+		posEstimate();
+	}
+
+	/*
+	 * size in bytes of a snapshot of this estimator
+	 */
+	public int getSnapshotSize() {
+		return SNAPSHOT_HEADER_BYTES + f.length*Double.BYTES;
+	}
+
+	/*
+	 * writes the belief, its window, the true pose and the last reading at the position of out,
+	 * which is advanced by getSnapshotSize(). The random generator of the simulated robot is
+	 * not part of it.
+	 */
+	public void writeSnapshot(ByteBuffer out) {
+		ByteBuffer snapshot = out.slice().order(ByteOrder.LITTLE_ENDIAN);
+		int[] pos = robot.pos;
+
+		snapshot.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(rows).putInt(cols).putInt(head);
+		snapshot.putLong(model.getFingerprint());
+		snapshot.putInt(fWindow[0]).putInt(fWindow[1]).putInt(fWindow[2]).putInt(fWindow[3]);
+		snapshot.putInt(pos[0]).putInt(pos[1]).putInt(pos[2]);
+		snapshot.putInt(sens[0]).putInt(sens[1]);
+		snapshot.position(SNAPSHOT_HEADER_BYTES);
+		snapshot.asDoubleBuffer().put(f);
+		out.position(out.position() + getSnapshotSize());
+	}
+
+	/*
+	 * restores a snapshot written by writeSnapshot from the position of in, which is advanced
+	 * past it. It must come from an estimator on a model with the same fingerprint.
+	 */
+	public void readSnapshot(ByteBuffer in) {
+		ByteBuffer snapshot = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+		int version, snapRows, snapCols, snapHead;
+
+		//The header is read back in the order writeSnapshot puts it
+		if(snapshot.remaining() < getSnapshotSize() || snapshot.getInt() != SNAPSHOT_MAGIC)
+			throw new IllegalArgumentException("Not a snapshot of a " + rows + "x" + cols + " estimator");
+		if((version = snapshot.getInt()) != SNAPSHOT_VERSION)
+			throw new IllegalArgumentException("Unsupported snapshot version " + version);
+		snapRows = snapshot.getInt();
+		snapCols = snapshot.getInt();
+		snapHead = snapshot.getInt();
+		if(snapRows != rows || snapCols != cols || snapHead != head)
+			throw new IllegalArgumentException("The snapshot is of a " + snapRows + "x" + snapCols
+					+ " grid, the estimator is " + rows + "x" + cols);
+		if(snapshot.getLong() != model.getFingerprint())
+			throw new IllegalArgumentException("The snapshot was taken on a different model");
+
+		for(int i = 0; i < 4; i++){
+			fWindow[i] = snapshot.getInt();
+		}
+		for(int i = 0; i < 3; i++){
+			robot.pos[i] = snapshot.getInt();
+		}
+		sens[0] = snapshot.getInt();
+		sens[1] = snapshot.getInt();
+		snapshot.position(SNAPSHOT_HEADER_BYTES);
+		snapshot.asDoubleBuffer().get(f);
+		//Nothing is known about what fNext holds, so the next step clears all of it
+		nextWindow[0] = 0;
+		nextWindow[1] = rows;
+		nextWindow[2] = 0;
+		nextWindow[3] = cols;
+		if(epsilon > 0)
+			track();
+		in.position(in.position() + getSnapshotSize());
+	}
+
+	/*
+	 * writes a snapshot into file, replacing it, through a memory mapping
+	 */
+	public void saveSnapshot(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+			writeSnapshot(channel.map(FileChannel.MapMode.READ_WRITE, 0, getSnapshotSize()));
+		}
+	}
+
+	/*
+	 * restores the snapshot saved in file by saveSnapshot
+	 */
+	public void loadSnapshot(Path file) throws IOException {
+		MappedByteBuffer snapshot;
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			if(channel.size() < getSnapshotSize())
+				throw new IOException(file + " is not a snapshot of a " + rows + "x" + cols + " estimator");
+			snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, getSnapshotSize());
+		}
+		readSnapshot(snapshot);
+	}
 
 	/*
 	 * returns the currently known true position i.e., after one simulation step
@@ -458,8 +611,8 @@ public class HMMPredictor implements EstimatorInterface {
 	@Override
 	public int[] getCurrentTruePosition() {
 		int[] posXY = new int[2];
-		posXY[0] = pos[0];
-		posXY[1] = pos[1];
+		posXY[0] = robot.getPosition()[0];
+		posXY[1] = robot.getPosition()[1];
 		
 		return posXY;
 	}
@@ -499,12 +652,7 @@ public class HMMPredictor implements EstimatorInterface {
 	 */
 	@Override
 	public double getOrXY(int rX, int rY, int x, int y, int h) {
-		if(rX == -1 || rY == -1){
-			return O[rows*cols][mapT(x,y,h)];
-		}
-		else{
-			return O[mapO(rX,rY)][mapT(x,y,h)];
-		}
+		return O.get(rX,rY,x,y);
 	}
 
 	/*
@@ -513,6 +661,36 @@ public class HMMPredictor implements EstimatorInterface {
 	 */	
 	@Override
 	public double getTProb(int x, int y, int h, int nX, int nY, int nH) {
-		return T[mapT(x,y,h)][mapT(nX,nY,nH)];
+		return T.get(mapT(x,y,h),mapT(nX,nY,nH));
+	}
+
+	/*
+	 * sums the headings of every cell in one pass over f; only the cells in the window of f
+	 * can be non-zero
+	 */
+	@Override
+	public void getCurrentProbs(double[] probs) {
+		double probability;
+		
+		Arrays.fill(probs, 0, rows*cols, 0);
+		for(int row = fWindow[0]; row < fWindow[1]; row++){
+			for(int col = fWindow[2]; col < fWindow[3]; col++){
+				probability = 0;
+				for(int i = mapT(row,col,0); i < mapT(row,col,head); i++){
+					probability += f[i];
+				}
+				probs[row*cols + col] = probability;
+			}
+		}
+	}
+	
+	@Override
+	public void getTRow(int x, int y, int h, double[] probs) {
+		T.getRow(mapT(x,y,h), probs);
+	}
+	
+	@Override
+	public void getOrVector(int rX, int rY, double[] probs) {
+		O.getDiagonal(rX, rY, probs);
 	}
 }
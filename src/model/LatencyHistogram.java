@@ -0,0 +1,83 @@
+package model;
+
+import java.util.Arrays;
+
+/*
+ * Log-linear histogram of non-negative long values (nanoseconds here), in the style of
+ * HdrHistogram: every power of two is split into 2^SUB_BITS buckets, so percentiles are
+ * accurate to about 3% over the whole range and recording is a couple of shifts and an
+ * increment. It is meant to be written by a single thread; readers on other threads may
+ * see counts a few values behind.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5, SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final long[] counts = new long[(64 - SUB_BITS + 1)*SUB_BUCKETS];
+	private long total, max, sum;
+
+	//Values below SUB_BUCKETS have a bucket each, then every power of two gets SUB_BUCKETS
+	private static int bucket(long value){
+		int exponent;
+
+		if(value < SUB_BUCKETS)
+			return (int) value;
+		exponent = 63 - Long.numberOfLeadingZeros(value);
+		return (exponent - SUB_BITS + 1)*SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	//Largest value that falls in the bucket
+	private static long highestValue(int bucket){
+		int exponent;
+
+		if(bucket < SUB_BUCKETS)
+			return bucket;
+		exponent = bucket/SUB_BUCKETS + SUB_BITS - 1;
+		return ((long) (SUB_BUCKETS + bucket%SUB_BUCKETS + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	public void record(long value){
+		if(value < 0)
+			value = 0;
+		counts[bucket(value)]++;
+		total++;
+		sum += value;
+		if(value > max)
+			max = value;
+	}
+
+	public long getCount(){
+		return total;
+	}
+
+	public long getMax(){
+		return max;
+	}
+
+	public double getMean(){
+		return total == 0 ? 0 : (double) sum/total;
+	}
+
+	/*
+	 * returns the value below which the given percentage (0-100) of the recorded values fall,
+	 * rounded up to the end of its bucket (but never above the maximum)
+	 */
+	public long getValueAtPercentile(double percentile){
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile))/100*total), seen = 0;
+
+		if(total == 0)
+			return 0;
+		rank = Math.max(1, rank);
+		for(int i = 0; i < counts.length; i++){
+			seen += counts[i];
+			if(seen >= rank)
+				return Math.min(max, highestValue(i));
+		}
+		return max;
+	}
+
+	public void reset(){
+		Arrays.fill(counts, 0);
+		total = max = sum = 0;
+	}
+}
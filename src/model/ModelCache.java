@@ -0,0 +1,115 @@
+package model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Keeps recently built HMMModels so that new estimators on the same grid reuse them instead
+ * of regenerating T and O. Models are keyed by grid size, storage mode and sensor kernel; at
+ * most "capacity" of them are kept, dropping the least recently used one. Models are immutable,
+ * so the same instance is handed out to every caller and thread.
+ */
+public class ModelCache {
+
+	public static final int DEFAULT_CAPACITY = 16;
+
+	private static final ModelCache SHARED = new ModelCache(DEFAULT_CAPACITY);
+
+	private final Map<Key, HMMModel> models;
+
+	public ModelCache(final int capacity){
+		//Access order turns the map into an LRU list
+		models = new LinkedHashMap<Key, HMMModel>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, HMMModel> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/*
+	 * returns the cache used by the static factory methods
+	 */
+	public static ModelCache shared(){
+		return SHARED;
+	}
+
+	/*
+	 * returns a new estimator on a shared model of the default kind for rows*cols;
+	 * only its belief and simulated robot are created
+	 */
+	public static HMMPredictor newPredictor(int rows, int cols){
+		return new HMMPredictor(SHARED.get(rows, cols));
+	}
+
+	public HMMModel get(int rows, int cols){
+		return get(rows, cols, false, false, ObservationModel.defaultKernel());
+	}
+
+	/*
+	 * returns the cached model with these parameters, building it if needed. The model is
+	 * built outside the lock, so a slow build does not hold up callers asking for other grids.
+	 */
+	public HMMModel get(int rows, int cols, boolean matrixFree, boolean denseObservations, double[] sensorKernel){
+		Key key = new Key(rows, cols, matrixFree, denseObservations, sensorKernel);
+		HMMModel model, previous;
+
+		synchronized(this){
+			model = models.get(key);
+		}
+		if(model != null)
+			return model;
+
+		model = new HMMModel(rows, cols, matrixFree, denseObservations, sensorKernel);
+		synchronized(this){
+			//Someone else may have built it meanwhile; keep a single instance
+			previous = models.putIfAbsent(key, model);
+		}
+		return previous != null ? previous : model;
+	}
+
+	public synchronized int size(){
+		return models.size();
+	}
+
+	public synchronized void clear(){
+		models.clear();
+	}
+
+	private static final class Key {
+
+		private final int rows, cols, head;
+		private final boolean matrixFree, denseObservations;
+		private final double[] kernel;
+
+		Key(int rows, int cols, boolean matrixFree, boolean denseObservations, double[] kernel){
+			this.rows = rows;
+			this.cols = cols;
+			this.head = 4;
+			this.matrixFree = matrixFree;
+			this.denseObservations = denseObservations;
+			this.kernel = kernel.clone();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			Key other;
+
+			if(!(o instanceof Key))
+				return false;
+			other = (Key) o;
+			return rows == other.rows && cols == other.cols && head == other.head
+					&& matrixFree == other.matrixFree && denseObservations == other.denseObservations
+					&& Arrays.equals(kernel, other.kernel);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((((rows*31 + cols)*31 + head)*31 + (matrixFree ? 1 : 0))*31 + (denseObservations ? 1 : 0))*31
+					+ Arrays.hashCode(kernel);
+		}
+	}
+}
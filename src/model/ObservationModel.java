@@ -0,0 +1,191 @@
+package model;
+
+import java.util.Arrays;
+
+/*
+ * Sensor model of the robot. The probability of a reading only depends on the Chebyshev
+ * distance d between the reading and the true cell (kernel[d], none beyond the kernel), and the
+ * probability of "nothing" is whatever is left for each cell. By default the entries of the
+ * observation matrices O_r are worked out from that, which only needs one value per cell.
+ * The precomputed mode keeps the whole table of rows*cols+1 diagonals as before, which takes
+ * O(rows^2*cols^2*head) memory.
+ */
+public class ObservationModel {
+
+	//Probability of a reading at distance 0, 1 and 2 from the true cell
+	private static final double[] DEFAULT_KERNEL = {0.1, 0.05, 0.025};
+
+	private final int rows, cols, head;
+	private final double[] kernel;
+	private final int range;
+	private final double[] nothing;
+	private final double[][] O;
+
+	public ObservationModel(int rows, int cols){
+		this(rows, cols, false);
+	}
+
+	public ObservationModel(int rows, int cols, boolean precomputed){
+		this(rows, cols, DEFAULT_KERNEL, precomputed);
+	}
+
+	/*
+	 * kernel[d] is the probability of a reading d cells away from the true cell. A cell away
+	 * from the walls has 8d cells at distance d, so k0 + sum(8d*kd) must not exceed 1 or
+	 * "nothing" would get a negative probability there.
+	 */
+	public ObservationModel(int rows, int cols, double[] kernel, boolean precomputed){
+		double total = 0;
+
+		if(rows < 2 || cols < 2)
+			throw new IllegalArgumentException("The grid needs at least 2 rows and 2 columns, not " + rows + "x" + cols);
+		if(kernel.length == 0)
+			throw new IllegalArgumentException("The sensor kernel needs at least one value");
+		for(int d = 0; d < kernel.length; d++){
+			if(!(kernel[d] >= 0))
+				throw new IllegalArgumentException("Negative sensor probability " + kernel[d] + " at distance " + d);
+			total += d == 0 ? kernel[0] : kernel[d]*8*d;
+		}
+		if(total > 1)
+			throw new IllegalArgumentException("The sensor kernel " + Arrays.toString(kernel)
+					+ " gives readings a total probability of " + total + " > 1");
+		this.rows = rows;
+		this.cols = cols;
+		this.head = 4;
+		this.kernel = kernel.clone();
+		this.range = kernel.length - 1;
+
+		if(precomputed){
+			//Each of the Os matrices is represented by an array [rows*cols*head]. head could be avoided, but helps making multiplication simpler
+			//As we have [rows*cols +1] Os, we store the info in a matrix.
+			O = new double[rows*cols +1][rows*cols*head];
+			generateOs(O);
+			nothing = null;
+		} else {
+			O = null;
+			nothing = new double[rows*cols];
+			generateNothing();
+		}
+	}
+
+	/*
+	 * returns a copy of the kernel used when none is given: 0.1, 0.05 and 0.025 at
+	 * distance 0, 1 and 2
+	 */
+	public static double[] defaultKernel(){
+		return DEFAULT_KERNEL.clone();
+	}
+
+	/*
+	 * readings further than this (in rows or columns) from the true cell have probability 0
+	 */
+	public int getRange(){
+		return range;
+	}
+
+	public double[] getKernel(){
+		return kernel.clone();
+	}
+
+	/*
+	 * returns P(r | X = (x,y,h)) for the reading r = (rX,rY), or for "nothing" if rX or rY
+	 * is negative. The sensor does not depend on the heading.
+	 */
+	public double get(int rX, int rY, int x, int y){
+		int d;
+
+		if(O != null)
+			return O[mapO(rX,rY)][mapT(x,y,0)];
+		if(rX < 0 || rY < 0)
+			return nothing[x*cols + y];
+		d = Math.max(Math.abs(rX - x), Math.abs(rY - y));
+		return d <= range ? kernel[d] : 0;
+	}
+
+	/*
+	 * writes the diagonal of O_r for the reading (rX,rY) into probs, one entry per state.
+	 * A real reading only leaves the cells within range of it non-zero.
+	 */
+	public void getDiagonal(int rX, int rY, double[] probs){
+		int fromRow = 0, toRow = rows, fromCol = 0, toCol = cols;
+		double probability;
+
+		if(rX >= 0 && rY >= 0){
+			Arrays.fill(probs, 0, rows*cols*head, 0);
+			fromRow = Math.max(0, rX - range);
+			toRow = Math.min(rows, rX + range + 1);
+			fromCol = Math.max(0, rY - range);
+			toCol = Math.min(cols, rY + range + 1);
+		}
+		for(int i = fromRow; i < toRow; i++){
+			for(int j = fromCol; j < toCol; j++){
+				probability = get(rX,rY,i,j);
+				Arrays.fill(probs, mapT(i,j,0), mapT(i,j,head), probability);
+			}
+		}
+	}
+
+	//Find the corresponding element in one of the arrays rows*cols*head
+	private int mapT(int row, int col, int head){
+		return col*4 + row*this.cols*4 + head;
+	}
+	//Find the proper matrix O
+	private int mapO(int row, int col){
+		if(row < 0 || col < 0)
+			return cols*rows;
+		else
+			return col + row*this.cols;
+	}
+
+	//Number of cells of the grid within distance d of (x,y)
+	private int cellsWithin(int x, int y, int d){
+		return (Math.min(rows - 1, x + d) - Math.max(0, x - d) + 1)*(Math.min(cols - 1, y + d) - Math.max(0, y - d) + 1);
+	}
+
+	//"nothing" takes what is left after every reading the cell can produce
+	private double nothingProb(int x, int y){
+		double probability = 1 - kernel[0];
+
+		for(int d = 1; d <= range; d++){
+			probability -= kernel[d]*(cellsWithin(x,y,d) - cellsWithin(x,y,d - 1));
+		}
+		return probability;
+	}
+	private void generateNothing(){
+		for(int i = 0; i < rows; i++){
+			for(int j = 0; j < cols; j++){
+				nothing[i*cols + j] = nothingProb(i,j);
+			}
+		}
+	}
+
+	//Only the cells within range of each reading are visited, the rest of the table stays 0,
+	//so building it takes time linear in the number of non-zero entries
+	private void generateOs(double[][] O){
+		double probability;
+		//First two done to iterate through the O matrices
+		for(int Oi = 0; Oi < rows; Oi++){
+			for(int Oj = 0; Oj < cols; Oj++){
+				//Now we fill in the window around the reading
+				for(int i = Math.max(0, Oi - range); i <= Math.min(rows - 1, Oi + range); i++){
+					for(int j = Math.max(0, Oj - range); j <= Math.min(cols - 1, Oj + range); j++){
+						probability = kernel[Math.max(Math.abs(Oi - i), Math.abs(Oj - j))];
+						for(int h = 0; h < head; h++){
+							O[mapO(Oi,Oj)][mapT(i,j,h)] = probability;
+						}
+					}
+				}
+			}
+		}
+		
+		//Initialize the sensor error matrix
+		for(int i = 0; i < rows; i++){
+			for(int j = 0; j < cols; j++){
+				probability = nothingProb(i,j);
+				for(int h = 0; h < head; h++){
+					O[rows*cols][mapT(i,j,h)] = probability;
+				}
+			}
+		}
+	}
+}
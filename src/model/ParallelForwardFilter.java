@@ -0,0 +1,107 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Runs another forward filter on a ForkJoinPool. The rectangle is split into bands of whole
+ * rows, each band is propagated on its own and the partial sums are added up on the way back,
+ * which gives the normalisation constant. Work smaller than the threshold (in states) is done
+ * on the calling thread, so small grids do not pay for the task overhead.
+ */
+public class ParallelForwardFilter implements ForwardFilter {
+
+	public static final int DEFAULT_THRESHOLD = 1 << 14;
+
+	private final ForwardFilter filter;
+	private final ForkJoinPool pool;
+	private final int head, threshold;
+
+	public ParallelForwardFilter(ForwardFilter filter){
+		this(filter, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+	}
+
+	public ParallelForwardFilter(ForwardFilter filter, ForkJoinPool pool, int threshold){
+		this.filter = filter;
+		this.head = 4;
+		this.pool = pool;
+		this.threshold = Math.max(1, threshold);
+	}
+
+	@Override
+	public double propagate(double[] f, double[] next, int rX, int rY, int fromRow, int toRow, int fromCol, int toCol) {
+		if((toRow - fromRow)*(toCol - fromCol)*head <= threshold)
+			return filter.propagate(f, next, rX, rY, fromRow, toRow, fromCol, toCol);
+		return pool.invoke(new Band(f, next, rX, rY, fromRow, toRow, fromCol, toCol));
+	}
+
+	@Override
+	public void scale(double[] v, double alpha, int from, int to) {
+		if(to - from <= threshold)
+			filter.scale(v, alpha, from, to);
+		else
+			pool.invoke(new Scale(v, alpha, from, to));
+	}
+
+	private class Band extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] f, next;
+		private final int rX, rY, fromRow, toRow, fromCol, toCol;
+
+		Band(double[] f, double[] next, int rX, int rY, int fromRow, int toRow, int fromCol, int toCol){
+			this.f = f;
+			this.next = next;
+			this.rX = rX;
+			this.rY = rY;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+			this.fromCol = fromCol;
+			this.toCol = toCol;
+		}
+
+		@Override
+		protected Double compute() {
+			int middle;
+			Band upper;
+
+			if(toRow - fromRow < 2 || (toRow - fromRow)*(toCol - fromCol)*head <= threshold)
+				return filter.propagate(f, next, rX, rY, fromRow, toRow, fromCol, toCol);
+
+			middle = (fromRow + toRow) >>> 1;
+			upper = new Band(f, next, rX, rY, fromRow, middle, fromCol, toCol);
+			upper.fork();
+			return new Band(f, next, rX, rY, middle, toRow, fromCol, toCol).compute() + upper.join();
+		}
+	}
+
+	private class Scale extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] v;
+		private final double alpha;
+		private final int from, to;
+
+		Scale(double[] v, double alpha, int from, int to){
+			this.v = v;
+			this.alpha = alpha;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			int middle;
+
+			if(to - from <= threshold){
+				filter.scale(v, alpha, from, to);
+				return;
+			}
+			middle = (from + to) >>> 1;
+			invokeAll(new Scale(v, alpha, from, middle), new Scale(v, alpha, middle, to));
+		}
+	}
+}
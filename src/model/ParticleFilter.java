@@ -0,0 +1,371 @@
+package model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+import control.EstimatorInterface;
+
+/*
+ * Estimator for grids too large for the exact filter: the belief is a set of particles, each a
+ * state of the same model. A step moves every particle with the motion tables of the simulated
+ * robot (so with the same wall and corner rules as T), weights it by the observation model and
+ * draws the new set by systematic resampling, at a cost that only depends on the number of
+ * particles. Particles are plain int arrays and are handled in blocks of BLOCK on a ForkJoinPool,
+ * each block with its own generator split off the seed, so a seeded run gives the same result
+ * however the blocks are scheduled. getCurrentProb reads a count of particles per cell that is
+ * updated as particles change cell.
+ */
+public class ParticleFilter implements EstimatorInterface {
+
+	public static final int DEFAULT_PARTICLES = 1 << 16;
+	public static final int BLOCK_BITS = 14;
+	public static final int BLOCK = 1 << BLOCK_BITS;
+
+	private final int rows, cols, head, particles, blocks;
+	private final TransitionModel T;
+	private final ObservationModel O;
+	private final RobotSimulator robot;
+	private final ForkJoinPool pool;
+	private final SplittableGenerator random;
+	private final SplittableGenerator[] generators;
+	//Movement tables by heading and free directions, as in RobotSimulator
+	private final AliasTable[] moves;
+	//States of the particles, after moving them and after resampling
+	private int[] state, moved, next;
+	//Running sum of the weights within each block, and the total of each block
+	private final double[] cumulative, blockWeight, blockStart;
+	//Particles in each cell
+	private final int[] counts;
+	int[] sens;
+
+	public ParticleFilter(int rows, int cols){
+		this(rows, cols, DEFAULT_PARTICLES);
+	}
+
+	/*
+	 * uses the matrix-free model, which suits the large grids this is meant for
+	 */
+	public ParticleFilter(int rows, int cols, int particles){
+		this(new HMMModel(rows, cols, true, false), particles, new SplittableRandom());
+	}
+
+	public ParticleFilter(HMMModel model, int particles, SplittableGenerator random){
+		this(model, particles, random, ForkJoinPool.commonPool());
+	}
+
+	/*
+	 * more particles give a closer estimate at a cost linear in their number
+	 */
+	public ParticleFilter(HMMModel model, int particles, SplittableGenerator random, ForkJoinPool pool){
+		if(particles < 1)
+			throw new IllegalArgumentException("The filter needs at least one particle");
+		this.rows = model.getNumRows();
+		this.cols = model.getNumCols();
+		this.head = model.getNumHead();
+		this.particles = particles;
+		this.blocks = (particles + BLOCK - 1) >>> BLOCK_BITS;
+		this.T = model.getTransitionModel();
+		this.O = model.getObservationModel();
+		this.pool = pool;
+		this.random = random;
+
+		robot = new RobotSimulator(rows, cols, T, O, random.split());
+		sens = new int[2];
+		generators = new SplittableGenerator[blocks];
+		for(int b = 0; b < blocks; b++){
+			generators[b] = random.split();
+		}
+
+		//Every kind of cell shows up next to a corner
+		moves = new AliasTable[head*16];
+		for(int row : new int[]{0, Math.min(1, rows - 1), rows - 1}){
+			for(int col : new int[]{0, Math.min(1, cols - 1), cols - 1}){
+				for(int h = 0; h < head; h++){
+					moves[h*16 + StencilTransitionModel.freeMask(rows,cols,row,col)] = RobotSimulator.moveTable(T, (row*cols + col)*head + h);
+				}
+			}
+		}
+
+		state = new int[particles];
+		moved = new int[particles];
+		next = new int[particles];
+		cumulative = new double[particles];
+		blockWeight = new double[blocks];
+		blockStart = new double[blocks];
+		counts = new int[rows*cols];
+		for(int j = 0; j < particles; j++){
+			state[j] = random.nextInt(rows*cols*head);
+			counts[state[j]/head]++;
+		}
+	}
+
+	public int getNumParticles() {
+		return particles;
+	}
+
+	@Override
+	public int getNumRows() {
+		return rows;
+	}
+	@Override
+	public int getNumCols() {
+		return cols;
+	}
+	@Override
+	public int getNumHead() {
+		return head;
+	}
+
+	/*
+	 * should trigger one step of the estimation, i.e., true position, sensor reading and
+	 * the probability distribution for the position estimate should be updated one step
+	 * after the method has been called once.
+	 */
+	@Override
+	public void update() {
+		robot.move();
+		robot.sense();
+		sens[0] = robot.getReading()[0];
+		sens[1] = robot.getReading()[1];
+		step();
+	}
+
+	/*
+	 * runs only the estimation step for a reading obtained elsewhere, (-1,-1) for "nothing"
+	 */
+	public void observe(int rX, int rY) {
+		sens[0] = rX;
+		sens[1] = rY;
+		step();
+	}
+
+	private void step() {
+		double total = 0;
+		int[] swap;
+
+		run(new Move(0, blocks));
+		for(int b = 0; b < blocks; b++){
+			blockStart[b] = total;
+			total += blockWeight[b];
+		}
+		if(total > 0)
+			run(new Resample(0, blocks, total, random.nextDouble()));
+		else
+			scatter();
+
+		for(int j = 0; j < particles; j++){
+			counts[state[j]/head]--;
+			counts[next[j]/head]++;
+		}
+		swap = state;
+		state = next;
+		next = swap;
+	}
+
+	private void run(RecursiveAction task) {
+		if(blocks == 1)
+			task.invoke();
+		else
+			pool.invoke(task);
+	}
+
+	/*
+	 * no particle explains the reading: start over from it alone, drawing cells in proportion to
+	 * O_r like HMMPredictor.reseed, from those in sensor range of a reading or anywhere for "nothing"
+	 */
+	private void scatter() {
+		int range = O.getRange(), fromRow = 0, toRow = rows, fromCol = 0, toCol = cols, width, cell;
+		double total = 0;
+		double[] weights;
+		AliasTable cells;
+
+		if(sens[0] >= 0 && sens[1] >= 0){
+			fromRow = Math.max(0, sens[0] - range);
+			toRow = Math.min(rows, sens[0] + range + 1);
+			fromCol = Math.max(0, sens[1] - range);
+			toCol = Math.min(cols, sens[1] + range + 1);
+		}
+		width = toCol - fromCol;
+		weights = new double[(toRow - fromRow)*width];
+		for(int k = 0; k < weights.length; k++){
+			weights[k] = O.get(sens[0],sens[1],fromRow + k/width,fromCol + k%width);
+			total += weights[k];
+		}
+		//A reading no cell can give, e.g. "nothing" from a sensor that always reports, tells nothing
+		if(total == 0)
+			Arrays.fill(weights, 1);
+
+		cells = new AliasTable(weights, weights.length);
+		for(int j = 0; j < particles; j++){
+			cell = cells.sample(random);
+			next[j] = ((fromRow + cell/width)*cols + fromCol + cell%width)*head + random.nextInt(head);
+		}
+	}
+
+	//Weight of particle i summed with those before it in all blocks
+	private double cumulative(int i) {
+		return blockStart[i >>> BLOCK_BITS] + cumulative[i];
+	}
+
+	/*
+	 * moves the particles of blocks [from,to) and weights them by the reading
+	 */
+	private class Move extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+
+		Move(int from, int to){
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			int middle;
+
+			if(to - from > 1){
+				middle = (from + to) >>> 1;
+				invokeAll(new Move(from, middle), new Move(middle, to));
+				return;
+			}
+			move(from);
+		}
+
+		private void move(int b) {
+			RandomGenerator generator = generators[b];
+			int row, col, d, s;
+			double sum = 0;
+
+			for(int j = b << BLOCK_BITS; j < Math.min(particles, (b + 1) << BLOCK_BITS); j++){
+				s = state[j];
+				row = s/head/cols;
+				col = s/head%cols;
+				d = moves[(s%head)*16 + StencilTransitionModel.freeMask(rows,cols,row,col)].sample(generator);
+				row += StencilTransitionModel.DROW[d];
+				col += StencilTransitionModel.DCOL[d];
+				moved[j] = (row*cols + col)*head + d;
+				sum += O.get(sens[0],sens[1],row,col);
+				cumulative[j] = sum;
+			}
+			blockWeight[b] = sum;
+		}
+	}
+
+	/*
+	 * systematic resampling of the particles [from,to) of the new set: particle j copies the
+	 * moved particle whose cumulative weight first passes (j + u)*total/particles
+	 */
+	private class Resample extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+		private final double total, u;
+
+		Resample(int from, int to, double total, double u){
+			this.from = from;
+			this.to = to;
+			this.total = total;
+			this.u = u;
+		}
+
+		@Override
+		protected void compute() {
+			int middle;
+
+			if(to - from > 1){
+				middle = (from + to) >>> 1;
+				invokeAll(new Resample(from, middle, total, u), new Resample(middle, to, total, u));
+				return;
+			}
+			resample(from);
+		}
+
+		private void resample(int b) {
+			int first = b << BLOCK_BITS, last = Math.min(particles, (b + 1) << BLOCK_BITS), i, low, high, mid;
+			double step = total/particles, position = (first + u)*step;
+
+			//Binary search for the first particle passing the first position
+			low = 0;
+			high = particles - 1;
+			while(low < high){
+				mid = (low + high) >>> 1;
+				if(cumulative(mid) > position)
+					high = mid;
+				else
+					low = mid + 1;
+			}
+			i = low;
+			for(int j = first; j < last; j++){
+				position = (j + u)*step;
+				while(i < particles - 1 && cumulative(i) <= position){
+					i++;
+				}
+				next[j] = moved[i];
+			}
+		}
+	}
+
+	/*
+	 * returns the currently known true position i.e., after one simulation step
+	 * of the robot as (x,y)-pair.
+	 */
+	@Override
+	public int[] getCurrentTruePosition() {
+		int[] posXY = new int[2];
+		posXY[0] = robot.getPosition()[0];
+		posXY[1] = robot.getPosition()[1];
+
+		return posXY;
+	}
+
+	/*
+	 * returns the currently available sensor reading obtained for the true position
+	 * after the simulation step
+	 */
+	@Override
+	public int[] getCurrentReading() {
+		return sens;
+	}
+
+	/*
+	 * returns the share of particles in (x,y), summed over headings
+	 */
+	@Override
+	public double getCurrentProb(int x, int y) {
+		return counts[x*cols + y]/(double) particles;
+	}
+
+	@Override
+	public double getOrXY(int rX, int rY, int x, int y, int h) {
+		return O.get(rX,rY,x,y);
+	}
+
+	@Override
+	public double getTProb(int x, int y, int h, int nX, int nY, int nH) {
+		return T.get((x*cols + y)*head + h, (nX*cols + nY)*head + nH);
+	}
+
+	@Override
+	public void getCurrentProbs(double[] probs) {
+		for(int c = 0; c < rows*cols; c++){
+			probs[c] = counts[c]/(double) particles;
+		}
+	}
+
+	@Override
+	public void getTRow(int x, int y, int h, double[] probs) {
+		T.getRow((x*cols + y)*head + h, probs);
+	}
+
+	@Override
+	public void getOrVector(int rX, int rY, double[] probs) {
+		O.getDiagonal(rX, rY, probs);
+	}
+}
@@ -0,0 +1,155 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+/*
+ * Simulated robot: keeps its true pose, moves it according to a transition model
+ * and produces sensor readings from an observation model.
+ *
+ * Both distributions are sampled with alias tables, so a step costs O(1) and allocates
+ * nothing once the tables exist. The robot only ever moves to a neighbouring cell, facing the
+ * way it moved, and both distributions only depend on how close the cell is to the walls, so
+ * a table is built the first time a kind of cell is visited and reused for every cell like it.
+ */
+public class RobotSimulator {
+
+	private int rows,cols,head;
+	private TransitionModel T;
+	private ObservationModel O;
+	int[] pos;
+	int[] sens;
+	RandomGenerator random;
+	//Movement tables by heading and free directions, outcomes are the direction of the move
+	private AliasTable[] moves;
+	//Sensor tables by distance to each wall (capped at the sensor range)
+	private AliasTable[] readings;
+	private int[][] readingRow, readingCol;
+
+	public RobotSimulator(int rows, int cols, TransitionModel T, ObservationModel O){
+		this(rows, cols, T, O, new Random());
+	}
+
+	/*
+	 * the start pose and every step are drawn from random, so a seeded generator
+	 * reproduces the same run
+	 */
+	public RobotSimulator(int rows, int cols, TransitionModel T, ObservationModel O, RandomGenerator random){
+		int range = O.getRange() + 1;
+
+		this.rows = rows;
+		this.cols = cols;
+		this.head = 4;
+		this.T = T;
+		this.O = O;
+
+		moves = new AliasTable[head*16];
+		readings = new AliasTable[range*range*range*range];
+		readingRow = new int[readings.length][];
+		readingCol = new int[readings.length][];
+
+		this.random = random;
+		sens = new int[2];
+		pos = new int[3];
+		pos[0] = random.nextInt(rows);
+		pos[1] = random.nextInt(cols);
+		pos[2] = random.nextInt(head);
+	}
+
+	/*
+	 * returns the true pose as (row,col,heading)
+	 */
+	public int[] getPosition(){
+		return pos;
+	}
+
+	/*
+	 * returns the last reading as (row,col), or (-1,-1) for "nothing"
+	 */
+	public int[] getReading(){
+		return sens;
+	}
+
+	//Find the corresponding element in one of the arrays rows*cols*head
+	private int mapT(int row, int col, int head){
+		return col*4 + row*this.cols*4 + head;
+	}
+
+	/*
+	 * moves the robot one step according to the transition model
+	 */
+	public void move(){
+		int mask = StencilTransitionModel.freeMask(rows,cols,pos[0],pos[1]), key = pos[2]*16 + mask, d;
+
+		if(moves[key] == null)
+			moves[key] = moveTable(T, mapT(pos[0],pos[1],pos[2]));
+		d = moves[key].sample(random);
+		pos[0] += StencilTransitionModel.DROW[d];
+		pos[1] += StencilTransitionModel.DCOL[d];
+		pos[2] = d;
+	}
+
+	//Outcome d is moving (and turning) in direction d; T lists the moves sorted by state
+	static AliasTable moveTable(TransitionModel T, int state){
+		double[] probs = new double[4];
+		int last = 0, d;
+
+		for(int k = 0; k < T.degree(state); k++){
+			d = T.target(state,k)%4;
+			probs[d] = T.prob(state,k);
+			last = d;
+		}
+		//Rows facing a wall add up to 0.99; the cumulative search this replaced
+		//gave what is left to the last move, so that is kept
+		probs[last] += 1 - (probs[0] + probs[1] + probs[2] + probs[3]);
+		return new AliasTable(probs, 4);
+	}
+
+	/*
+	 * draws a new sensor reading for the current position from the observation model
+	 */
+	public void sense(){
+		int range = O.getRange(), key, k;
+
+		key = Math.min(pos[0], range);
+		key = key*(range + 1) + Math.min(rows - 1 - pos[0], range);
+		key = key*(range + 1) + Math.min(pos[1], range);
+		key = key*(range + 1) + Math.min(cols - 1 - pos[1], range);
+		if(readings[key] == null)
+			readingTable(key);
+
+		k = readings[key].sample(random);
+		if(k < readingRow[key].length){
+			sens[0] = pos[0] + readingRow[key][k];
+			sens[1] = pos[1] + readingCol[key][k];
+		} else {
+			sens[0] = sens[1] = -1;
+		}
+	}
+
+	//Outcomes are the possible readings, as offsets from the current cell, followed by "nothing"
+	private void readingTable(int key){
+		int range = O.getRange(), window = 2*range + 1, n = 0;
+		double[] probs = new double[window*window + 1];
+		int[] dRow = new int[window*window], dCol = new int[window*window];
+		double probability;
+
+		for(int i = Math.max(0,pos[0] - range); i <= Math.min(rows - 1,pos[0] + range); i++){
+			for(int j = Math.max(0,pos[1] - range); j <= Math.min(cols - 1,pos[1] + range); j++){
+				probability = O.get(i,j,pos[0],pos[1]);
+				if(probability != 0){
+					probs[n] = probability;
+					dRow[n] = i - pos[0];
+					dCol[n] = j - pos[1];
+					n++;
+				}
+			}
+		}
+		probs[n] = O.get(-1,-1,pos[0],pos[1]);
+
+		readingRow[key] = Arrays.copyOf(dRow, n);
+		readingCol[key] = Arrays.copyOf(dCol, n);
+		readings[key] = new AliasTable(probs, n + 1);
+	}
+}
@@ -0,0 +1,129 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Streams the readings of a log written by SensorLogWriter from a memory-mapped file. The file
+ * is mapped a segment of at most SEGMENT_BYTES at a time (a single mapping cannot go past 2GB)
+ * and every reading is decoded in place into two ints, so reading does not allocate anything
+ * per record and the page cache does the buffering.
+ */
+public class SensorLogReader implements Closeable {
+
+	public static final int SEGMENT_BYTES = 1 << 30;
+
+	private final FileChannel channel;
+	private final int rows, cols;
+	private final long records;
+	private MappedByteBuffer segment;
+	//Index of the next record, and of the first record in segment
+	private long next, segmentStart;
+	private int readingX, readingY;
+
+	public SensorLogReader(Path file) throws IOException {
+		MappedByteBuffer header;
+
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			if(channel.size() < SensorLogWriter.HEADER_BYTES)
+				throw new IOException(file + " is not a sensor log");
+			header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SensorLogWriter.HEADER_BYTES);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt(0) != SensorLogWriter.MAGIC)
+				throw new IOException(file + " is not a sensor log");
+			if(header.getInt(4) != SensorLogWriter.VERSION)
+				throw new IOException(file + " has unsupported log version " + header.getInt(4));
+			rows = header.getInt(8);
+			cols = header.getInt(12);
+			if(rows <= 0 || cols <= 0)
+				throw new IOException(file + " has an invalid grid size " + rows + "x" + cols);
+			records = (channel.size() - SensorLogWriter.HEADER_BYTES)/SensorLogWriter.RECORD_BYTES;
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getNumRows() {
+		return rows;
+	}
+	public int getNumCols() {
+		return cols;
+	}
+
+	/*
+	 * number of readings in the log
+	 */
+	public long getNumRecords() {
+		return records;
+	}
+
+	/*
+	 * moves to the next reading, returning false at the end of the log. The reading is then
+	 * available through getReadingX() and getReadingY(). A record that is neither a cell of the
+	 * grid nor "nothing" throws an IOException.
+	 */
+	public boolean next() throws IOException {
+		int cell;
+
+		if(next == records)
+			return false;
+		if(segment == null || next - segmentStart == segment.capacity()/SensorLogWriter.RECORD_BYTES)
+			map(next);
+		cell = segment.getInt((int) (next - segmentStart)*SensorLogWriter.RECORD_BYTES);
+		if(cell < -1 || cell >= (long) rows*cols)
+			throw new IOException("Reading " + next + " of the log is " + cell + ", not a cell of the " + rows + "x" + cols + " grid");
+		if(cell < 0){
+			readingX = readingY = -1;
+		} else {
+			readingX = cell/cols;
+			readingY = cell%cols;
+		}
+		next++;
+		return true;
+	}
+
+	public int getReadingX() {
+		return readingX;
+	}
+	public int getReadingY() {
+		return readingY;
+	}
+
+	/*
+	 * feeds every remaining reading to the estimator, which must be on a grid of the same
+	 * size, and returns how many were fed
+	 */
+	public long replay(HMMPredictor estimator) throws IOException {
+		long start = next;
+
+		if(estimator.getNumRows() != rows || estimator.getNumCols() != cols)
+			throw new IllegalArgumentException("The log is for a " + rows + "x" + cols + " grid, the estimator is "
+					+ estimator.getNumRows() + "x" + estimator.getNumCols());
+		while(next()){
+			estimator.observe(readingX, readingY);
+		}
+		return next - start;
+	}
+
+	//Maps the segment starting at record first
+	private void map(long first) throws IOException {
+		long size = Math.min((long) SEGMENT_BYTES, (records - first)*SensorLogWriter.RECORD_BYTES);
+
+		segment = channel.map(FileChannel.MapMode.READ_ONLY, SensorLogWriter.HEADER_BYTES + first*SensorLogWriter.RECORD_BYTES, size);
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+		segmentStart = first;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segment = null;
+		channel.close();
+	}
+}
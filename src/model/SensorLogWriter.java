@@ -0,0 +1,75 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Writes sensor readings into a binary log that SensorLogReader can replay. The format is a
+ * 16 byte header, the int MAGIC ("RLOG"), the format VERSION, rows and cols, followed by one
+ * little-endian int per reading: the cell row*cols + col, or -1 for "nothing". The number of
+ * readings follows from the file size, so a log cut short by a crash is still readable.
+ */
+public class SensorLogWriter implements Closeable {
+
+	public static final int MAGIC = 0x524C4F47;
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 16;
+	public static final int RECORD_BYTES = 4;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int rows, cols;
+	private long count;
+
+	public SensorLogWriter(Path file, int rows, int cols) throws IOException {
+		this.rows = rows;
+		this.cols = cols;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(cols);
+	}
+
+	/*
+	 * appends the reading (rX,rY), (-1,-1) for "nothing"
+	 */
+	public void write(int rX, int rY) throws IOException {
+		if(buffer.remaining() < RECORD_BYTES)
+			flush();
+		if(rX < 0 || rY < 0)
+			buffer.putInt(-1);
+		else if(rX < rows && rY < cols)
+			buffer.putInt(rX*cols + rY);
+		else
+			throw new IllegalArgumentException("Reading (" + rX + "," + rY + ") is out of the " + rows + "x" + cols + " grid");
+		count++;
+	}
+
+	/*
+	 * number of readings written so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public void flush() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package model;
+
+import java.util.Arrays;
+
+/*
+ * Forward-backward smoothing over a recorded sequence of readings, i.e. P(X_t | e_1..e_T) for
+ * every step t, on the same transition and observation models as the filter. Keeping every
+ * forward message would take T*N doubles, so only every k-th one is kept (k about sqrt(T)) and
+ * the messages of one island between two checkpoints are recomputed while the backward pass
+ * goes over it. Memory is O(sqrt(T)*N) at the cost of a second forward pass.
+ */
+public class Smoother {
+
+	/*
+	 * receives the smoothed belief over all states for step t (1..T). The array is reused
+	 * for the next step, so it has to be copied to be kept.
+	 */
+	public interface SmoothedConsumer {
+		public void accept(int t, double[] belief);
+	}
+
+	private final int rows, cols, head, states;
+	private final TransitionModel T;
+	private final ObservationModel O;
+	private final ForwardFilter filter;
+	private final double[] weighted;
+
+	public Smoother(HMMModel model){
+		this.rows = model.getNumRows();
+		this.cols = model.getNumCols();
+		this.head = model.getNumHead();
+		this.states = model.getNumStates();
+		this.T = model.getTransitionModel();
+		this.O = model.getObservationModel();
+		this.filter = model.newForwardFilter();
+		this.weighted = new double[states];
+	}
+
+	/*
+	 * smooths the readings (rX[t-1],rY[t-1]) for t = 1..length, starting from the uniform
+	 * prior, and hands every smoothed belief to out, from t = length down to t = 1
+	 */
+	public void smooth(int[] rX, int[] rY, int length, SmoothedConsumer out){
+		int k = Math.max(1, (int) Math.ceil(Math.sqrt(length))), islands = (length + k - 1)/k;
+		double[][] checkpoints = new double[islands][], island = new double[k + 1][];
+		double[] b = new double[states], bNext = new double[states], smoothed = new double[states], f, swap;
+		int start, end;
+
+		//Forward pass, keeping f_0, f_k, f_2k, ...
+		f = new double[states];
+		Arrays.fill(f, 1/(double) states);
+		for(int t = 0; t < length; t++){
+			if(t % k == 0)
+				checkpoints[t/k] = f.clone();
+			forward(f, smoothed, rX[t], rY[t]);
+			swap = f;
+			f = smoothed;
+			smoothed = swap;
+		}
+		for(int i = 0; i <= k; i++){
+			island[i] = new double[states];
+		}
+
+		//Backward pass, one island at a time from the end
+		Arrays.fill(b, 1);
+		for(int i = islands - 1; i >= 0; i--){
+			start = i*k;
+			end = Math.min(length, start + k);
+			System.arraycopy(checkpoints[i], 0, island[0], 0, states);
+			for(int t = start; t < end; t++){
+				forward(island[t - start], island[t - start + 1], rX[t], rY[t]);
+			}
+			checkpoints[i] = null;
+
+			for(int t = end; t > start; t--){
+				combine(island[t - start], b, smoothed);
+				out.accept(t, smoothed);
+				backward(b, bNext, rX[t - 1], rY[t - 1]);
+				swap = b;
+				b = bNext;
+				bNext = swap;
+			}
+		}
+	}
+
+	/*
+	 * f_t+1 = alpha*O_r*T'*f_t into next
+	 */
+	void forward(double[] f, double[] next, int rX, int rY){
+		double alpha = 1/filter.propagate(f, next, rX, rY, 0, rows, 0, cols);
+		filter.scale(next, alpha, 0, states);
+	}
+
+	/*
+	 * b_t-1 = T*O_r*b_t into next, where r is the reading of step t. It is normalised to
+	 * sum 1, which does not change the smoothed result and avoids underflow.
+	 */
+	void backward(double[] b, double[] next, int rX, int rY){
+		double o, sum = 0, value;
+		int i;
+
+		for(int row = 0; row < rows; row++){
+			for(int col = 0; col < cols; col++){
+				o = O.get(rX,rY,row,col);
+				for(int h = 0; h < head; h++){
+					i = (row*cols + col)*head + h;
+					weighted[i] = o*b[i];
+				}
+			}
+		}
+		for(i = 0; i < states; i++){
+			value = 0;
+			for(int k = 0; k < T.degree(i); k++){
+				value += T.prob(i,k)*weighted[T.target(i,k)];
+			}
+			next[i] = value;
+			sum += value;
+		}
+		for(i = 0; i < states; i++){
+			next[i] /= sum;
+		}
+	}
+
+	//Normalised product of a forward and a backward message
+	static void combine(double[] f, double[] b, double[] out){
+		double sum = 0;
+
+		for(int i = 0; i < f.length; i++){
+			out[i] = f[i]*b[i];
+			sum += out[i];
+		}
+		for(int i = 0; i < f.length; i++){
+			out[i] /= sum;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package model;
+
+/*
+ * Forward step over any TransitionModel: every entry gathers its predecessors (a column of T)
+ * weighted by the observation matrix for the reading.
+ */
+public class SparseForwardFilter implements ForwardFilter {
+
+	private final int rows, cols, head;
+	private final TransitionModel T;
+	private final ObservationModel O;
+
+	public SparseForwardFilter(int rows, int cols, TransitionModel T, ObservationModel O){
+		this.rows = rows;
+		this.cols = cols;
+		this.head = 4;
+		this.T = T;
+		this.O = O;
+	}
+
+	@Override
+	public double propagate(double[] f, double[] next, int rX, int rY, int fromRow, int toRow, int fromCol, int toCol) {
+		double sumf = 0, o, newf;
+		int i;
+
+		for(int row = fromRow; row < toRow; row++){
+			for(int col = fromCol; col < toCol; col++){
+				o = O.get(rX,rY,row,col);
+				for(int h = 0; h < head; h++){
+					i = (row*cols + col)*head + h;
+					newf = 0;
+					if(o != 0){
+						for(int k = 0; k < T.inDegree(i); k++){
+							newf += T.inProb(i,k)*o*f[T.source(i,k)];
+						}
+					}
+					next[i] = newf;
+					sumf += newf;
+				}
+			}
+		}
+		return sumf;
+	}
+}
@@ -0,0 +1,232 @@
+package model;
+
+/*
+ * Transition model T stored as a per-state neighbour list instead of a dense N*N matrix.
+ * The robot can only move to one of the four neighbouring cells, so every row of T has at
+ * most four non-zero entries. Row i is kept in the slots [i*MAX_DEGREE, i*MAX_DEGREE + degree(i))
+ * of the target/probability arrays, sorted by target state, so memory grows as O(N).
+ * The columns of T (the predecessors of each state) are kept the same way, which is what
+ * the forward step needs to apply T' without scattering.
+ */
+public class SparseTransitionModel implements TransitionModel {
+
+	public static final int MAX_DEGREE = 4;
+
+	private final int rows, cols, head, states;
+	private final int[] target, source;
+	private final double[] prob, inProb;
+	private final byte[] degree, inDegree;
+
+	public SparseTransitionModel(int rows, int cols){
+		this.rows = rows;
+		this.cols = cols;
+		this.head = 4;
+		this.states = rows*cols*head;
+
+		target = new int[states*MAX_DEGREE];
+		prob = new double[states*MAX_DEGREE];
+		degree = new byte[states];
+		generateT();
+
+		source = new int[states*MAX_DEGREE];
+		inProb = new double[states*MAX_DEGREE];
+		inDegree = new byte[states];
+		generateColumns();
+	}
+
+	@Override
+	public int getNumStates() {
+		return states;
+	}
+
+	@Override
+	public double get(int from, int to){
+		int base = from*MAX_DEGREE;
+		for(int k = 0; k < degree[from]; k++){
+			if(target[base + k] == to)
+				return prob[base + k];
+		}
+		return 0;
+	}
+
+	@Override
+	public int degree(int from){
+		return degree[from];
+	}
+	@Override
+	public int target(int from, int k){
+		return target[from*MAX_DEGREE + k];
+	}
+	@Override
+	public double prob(int from, int k){
+		return prob[from*MAX_DEGREE + k];
+	}
+
+	@Override
+	public int inDegree(int to){
+		return inDegree[to];
+	}
+	@Override
+	public int source(int to, int k){
+		return source[to*MAX_DEGREE + k];
+	}
+	@Override
+	public double inProb(int to, int k){
+		return inProb[to*MAX_DEGREE + k];
+	}
+
+	//Find the corresponding element in one of the arrays rows*cols*head
+	private int mapT(int row, int col, int head){
+		return col*4 + row*this.cols*4 + head;
+	}
+
+	private int moveNorth(int row, int col){
+		return col*4 + (row-1)*this.cols*4;
+	}
+	private int moveEast(int row, int col){
+		return (col+1)*4 + row*this.cols*4 + 1;
+	}
+	private int moveSouth(int row, int col){
+		return col*4 + (row+1)*this.cols*4 + 2;
+	}
+	private int moveWest(int row, int col){
+		return (col-1)*4 + row*this.cols*4 + 3;
+	}
+	private int faceNorth(int row, int col){
+		return mapT(row,col,0);
+	}
+	private int faceEast(int row, int col){
+		return mapT(row,col,1);
+	}
+	private int faceSouth(int row, int col){
+		return mapT(row,col,2);
+	}
+	private int faceWest(int row, int col){
+		return mapT(row,col,3);
+	}
+
+	//Insert T[from][to] = p keeping the row sorted by target state
+	private void set(int from, int to, double p){
+		int base = from*MAX_DEGREE, k = degree[from];
+
+		while(k > 0 && target[base + k - 1] > to){
+			target[base + k] = target[base + k - 1];
+			prob[base + k] = prob[base + k - 1];
+			k--;
+		}
+		target[base + k] = to;
+		prob[base + k] = p;
+		degree[from]++;
+	}
+	private void row(int from, int to1, double p1, int to2, double p2){
+		set(from,to1,p1);
+		set(from,to2,p2);
+	}
+	private void row(int from, int to1, double p1, int to2, double p2, int to3, double p3){
+		row(from,to1,p1,to2,p2);
+		set(from,to3,p3);
+	}
+	private void row(int from, int to1, double p1, int to2, double p2, int to3, double p3, int to4, double p4){
+		row(from,to1,p1,to2,p2,to3,p3);
+		set(from,to4,p4);
+	}
+
+	private void generateCorners(){
+		int i,j;
+
+		//Top left
+		i = 0;
+		j = 0;
+		row(faceNorth(i,j), moveEast(i,j), 0.5, moveSouth(i,j), 0.5);
+		row(faceWest(i,j), moveEast(i,j), 0.5, moveSouth(i,j), 0.5);
+		row(faceSouth(i,j), moveEast(i,j), 0.3, moveSouth(i,j), 0.7);
+		row(faceEast(i,j), moveSouth(i,j), 0.3, moveEast(i,j), 0.7);
+
+		//Top right
+		j = cols - 1;
+		row(faceNorth(i,j), moveSouth(i,j), 0.5, moveWest(i,j), 0.5);
+		row(faceEast(i,j), moveSouth(i,j), 0.5, moveWest(i,j), 0.5);
+		row(faceWest(i,j), moveWest(i,j), 0.7, moveSouth(i,j), 0.3);
+		row(faceSouth(i,j), moveWest(i,j), 0.3, moveSouth(i,j), 0.7);
+
+		//Bottom right
+		i = rows - 1;
+		row(faceSouth(i,j), moveWest(i,j), 0.5, moveNorth(i,j), 0.5);
+		row(faceEast(i,j), moveWest(i,j), 0.5, moveNorth(i,j), 0.5);
+		row(faceNorth(i,j), moveWest(i,j), 0.3, moveNorth(i,j), 0.7);
+		row(faceWest(i,j), moveNorth(i,j), 0.3, moveWest(i,j), 0.7);
+
+		//Bottom left
+		j = 0;
+		row(faceSouth(i,j), moveEast(i,j), 0.5, moveNorth(i,j), 0.5);
+		row(faceWest(i,j), moveEast(i,j), 0.5, moveNorth(i,j), 0.5);
+		row(faceNorth(i,j), moveEast(i,j), 0.3, moveNorth(i,j), 0.7);
+		row(faceEast(i,j), moveNorth(i,j), 0.3, moveEast(i,j), 0.7);
+	}
+	private void generateWalls(){
+		int i,j;
+
+		//Top row
+		i = 0;
+		for(j = 1; j < cols - 1; j++){
+			row(faceNorth(i,j), moveEast(i,j), 0.33, moveSouth(i,j), 0.33, moveWest(i,j), 0.33);
+			row(faceEast(i,j), moveWest(i,j), 0.15, moveSouth(i,j), 0.15, moveEast(i,j), 0.7);
+			row(faceSouth(i,j), moveWest(i,j), 0.15, moveEast(i,j), 0.15, moveSouth(i,j), 0.7);
+			row(faceWest(i,j), moveEast(i,j), 0.15, moveSouth(i,j), 0.15, moveWest(i,j), 0.7);
+		}
+
+		//Bottom row
+		i = rows -1;
+		for(j = 1; j < cols - 1; j++){
+			row(faceSouth(i,j), moveEast(i,j), 0.33, moveNorth(i,j), 0.33, moveWest(i,j), 0.33);
+			row(faceEast(i,j), moveWest(i,j), 0.15, moveNorth(i,j), 0.15, moveEast(i,j), 0.7);
+			row(faceNorth(i,j), moveWest(i,j), 0.15, moveEast(i,j), 0.15, moveNorth(i,j), 0.7);
+			row(faceWest(i,j), moveEast(i,j), 0.15, moveNorth(i,j), 0.15, moveWest(i,j), 0.7);
+		}
+
+		//Left column
+		j = 0;
+		for(i = 1; i < rows - 1; i++){
+			row(faceWest(i,j), moveEast(i,j), 0.33, moveSouth(i,j), 0.33, moveNorth(i,j), 0.33);
+			row(faceEast(i,j), moveNorth(i,j), 0.15, moveSouth(i,j), 0.15, moveEast(i,j), 0.7);
+			row(faceSouth(i,j), moveNorth(i,j), 0.15, moveEast(i,j), 0.15, moveSouth(i,j), 0.7);
+			row(faceNorth(i,j), moveEast(i,j), 0.15, moveSouth(i,j), 0.15, moveNorth(i,j), 0.7);
+		}
+
+		//Right column
+		j = cols - 1;
+		for(i = 1; i < rows - 1; i++){
+			row(faceEast(i,j), moveWest(i,j), 0.33, moveSouth(i,j), 0.33, moveNorth(i,j), 0.33);
+			row(faceWest(i,j), moveNorth(i,j), 0.15, moveSouth(i,j), 0.15, moveWest(i,j), 0.7);
+			row(faceSouth(i,j), moveNorth(i,j), 0.15, moveWest(i,j), 0.15, moveSouth(i,j), 0.7);
+			row(faceNorth(i,j), moveWest(i,j), 0.15, moveSouth(i,j), 0.15, moveNorth(i,j), 0.7);
+		}
+	}
+	private void generateT(){
+		generateCorners();
+		generateWalls();
+
+		//Middle points
+		for(int i  = 1; i < rows - 1; i++){
+			for(int j = 1; j < cols - 1; j++){
+				row(faceNorth(i,j), moveEast(i,j), 0.1, moveSouth(i,j), 0.1, moveWest(i,j), 0.1, moveNorth(i,j), 0.7);
+				row(faceEast(i,j), moveNorth(i,j), 0.1, moveWest(i,j), 0.1, moveSouth(i,j), 0.1, moveEast(i,j), 0.7);
+				row(faceSouth(i,j), moveNorth(i,j), 0.1, moveEast(i,j), 0.1, moveWest(i,j), 0.1, moveSouth(i,j), 0.7);
+				row(faceWest(i,j), moveNorth(i,j), 0.1, moveEast(i,j), 0.1, moveSouth(i,j), 0.1, moveWest(i,j), 0.7);
+			}
+		}
+	}
+	//Transpose the rows. Visiting them in order leaves every column sorted by source state
+	private void generateColumns(){
+		int to, slot;
+
+		for(int from = 0; from < states; from++){
+			for(int k = 0; k < degree[from]; k++){
+				to = target[from*MAX_DEGREE + k];
+				slot = to*MAX_DEGREE + inDegree[to]++;
+				source[slot] = from;
+				inProb[slot] = prob[from*MAX_DEGREE + k];
+			}
+		}
+	}
+}
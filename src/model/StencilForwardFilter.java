@@ -0,0 +1,48 @@
+package model;
+
+/*
+ * Matrix-free forward step. The robot can only reach (row,col,h) by moving in direction h
+ * from the cell behind it, so every entry is computed from the four headings of that cell,
+ * with the transition probabilities read from the grid geometry instead of a stored T.
+ * A step costs O(rows*cols*head) and the only memory used is f itself.
+ */
+public class StencilForwardFilter implements ForwardFilter {
+
+	private final int rows, cols, head;
+	private final ObservationModel O;
+
+	public StencilForwardFilter(int rows, int cols, ObservationModel O){
+		this.rows = rows;
+		this.cols = cols;
+		this.head = 4;
+		this.O = O;
+	}
+
+	@Override
+	public double propagate(double[] f, double[] next, int rX, int rY, int fromRow, int toRow, int fromCol, int toCol) {
+		double sumf = 0, o, newf;
+		int i, srcRow, srcCol, src, mask;
+
+		for(int row = fromRow; row < toRow; row++){
+			for(int col = fromCol; col < toCol; col++){
+				o = O.get(rX,rY,row,col);
+				for(int h = 0; h < head; h++){
+					i = (row*cols + col)*head + h;
+					newf = 0;
+					srcRow = row - StencilTransitionModel.DROW[h];
+					srcCol = col - StencilTransitionModel.DCOL[h];
+					if(o != 0 && srcRow >= 0 && srcRow < rows && srcCol >= 0 && srcCol < cols){
+						src = (srcRow*cols + srcCol)*head;
+						mask = StencilTransitionModel.freeMask(rows,cols,srcRow,srcCol);
+						for(int g = 0; g < head; g++){
+							newf += StencilTransitionModel.moveProb(mask,g,h)*o*f[src + g];
+						}
+					}
+					next[i] = newf;
+					sumf += newf;
+				}
+			}
+		}
+		return sumf;
+	}
+}
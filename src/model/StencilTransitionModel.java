@@ -0,0 +1,120 @@
+package model;
+
+/*
+ * Matrix-free version of the transition model: the entries of T are worked out from the grid
+ * geometry whenever they are asked for, so nothing of size N is ever stored. It follows the
+ * same rules as SparseTransitionModel: keep the heading with probability 0.7 and share the rest
+ * among the other free directions, or pick a free direction uniformly when facing a wall.
+ */
+public class StencilTransitionModel implements TransitionModel {
+
+	//Headings in the order used by mapT: north, east, south, west
+	static final int[] DROW = {-1, 0, 1, 0};
+	static final int[] DCOL = {0, 1, 0, -1};
+	//Successors sorted by state index: north, west, east, south
+	private static final int[] SORTED = {0, 3, 1, 2};
+
+	static final double AHEAD = 0.7;
+	//Indexed by the number of free directions around the cell
+	static final double[] TURN = {0, 0, 0.3, 0.15, 0.1};
+	static final double[] BLOCKED = {0, 1, 0.5, 0.33, 0};
+
+	private final int rows, cols, head;
+
+	public StencilTransitionModel(int rows, int cols){
+		this.rows = rows;
+		this.cols = cols;
+		this.head = 4;
+	}
+
+	@Override
+	public int getNumStates() {
+		return rows*cols*head;
+	}
+
+	/*
+	 * returns a bit mask with bit d set if the robot can move from (row,col) in direction d
+	 */
+	static int freeMask(int rows, int cols, int row, int col){
+		int mask = 0;
+
+		if(row > 0) mask |= 1;
+		if(col < cols - 1) mask |= 2;
+		if(row < rows - 1) mask |= 4;
+		if(col > 0) mask |= 8;
+		return mask;
+	}
+
+	/*
+	 * returns the probability of moving in direction d for a robot facing "heading" in a cell
+	 * whose free directions are given by mask
+	 */
+	static double moveProb(int mask, int heading, int d){
+		if((mask & (1 << d)) == 0)
+			return 0;
+		if((mask & (1 << heading)) == 0)
+			return BLOCKED[Integer.bitCount(mask)];
+		return d == heading ? AHEAD : TURN[Integer.bitCount(mask)];
+	}
+
+	@Override
+	public double get(int from, int to){
+		int cell = from/head, row = cell/cols, col = cell%cols, d = to%head;
+
+		//The mask already rules out moves that would leave the grid
+		if(to/head != (row + DROW[d])*cols + col + DCOL[d])
+			return 0;
+		return moveProb(freeMask(rows,cols,row,col), from%head, d);
+	}
+
+	@Override
+	public int degree(int from){
+		int cell = from/head;
+		return Integer.bitCount(freeMask(rows,cols,cell/cols,cell%cols));
+	}
+
+	//Direction of the k-th successor of a cell, in increasing order of the target state
+	private int direction(int cell, int k){
+		int mask = freeMask(rows,cols,cell/cols,cell%cols);
+
+		for(int d : SORTED){
+			if((mask & (1 << d)) != 0 && k-- == 0)
+				return d;
+		}
+		throw new IndexOutOfBoundsException("No successor " + k + " for state " + cell*head);
+	}
+
+	@Override
+	public int target(int from, int k){
+		int cell = from/head, d = direction(cell,k);
+		return ((cell/cols + DROW[d])*cols + cell%cols + DCOL[d])*head + d;
+	}
+
+	@Override
+	public double prob(int from, int k){
+		int cell = from/head;
+		return moveProb(freeMask(rows,cols,cell/cols,cell%cols), from%head, direction(cell,k));
+	}
+
+	/*
+	 * The only way into (row,col,h) is moving in direction h from the cell behind it,
+	 * so every state has either four predecessors (all headings of that cell) or none
+	 */
+	@Override
+	public int inDegree(int to){
+		int cell = to/head, h = to%head, row = cell/cols - DROW[h], col = cell%cols - DCOL[h];
+		return row >= 0 && row < rows && col >= 0 && col < cols ? head : 0;
+	}
+
+	@Override
+	public int source(int to, int k){
+		int h = to%head;
+		return to - (DROW[h]*cols + DCOL[h])*head - h + k;
+	}
+
+	@Override
+	public double inProb(int to, int k){
+		int cell = to/head, h = to%head, row = cell/cols - DROW[h], col = cell%cols - DCOL[h];
+		return moveProb(freeMask(rows,cols,row,col), k, h);
+	}
+}
@@ -0,0 +1,164 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Instrumentation for HMMPredictor.update: a latency histogram for each phase (move, sense,
+ * estimate) and for the whole step, a step counter, the bytes allocated per step and two
+ * gauges of the belief, its entropy (in bits) and the probability of the most likely cell.
+ * The gauges cost a pass over the belief, so they are only refreshed every gaugeInterval steps.
+ *
+ * An estimator without metrics does no timing at all, and setEnabled(false) (also through
+ * JMX) brings it back to that path at the cost of one flag check per step.
+ */
+public class StepMetrics implements StepMetricsMBean {
+
+	public static final int MOVE = 0, SENSE = 1, ESTIMATE = 2, STEP = 3;
+	private static final String[] PHASES = {"move", "sense", "estimate", "step"};
+
+	private final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+	private final int gaugeInterval;
+	private final com.sun.management.ThreadMXBean allocation;
+	private volatile boolean enabled = true;
+	private volatile double entropy, peak;
+	private long steps, allocatedBytes, allocationSteps, allocationStart;
+
+	public StepMetrics(){
+		this(100);
+	}
+
+	public StepMetrics(int gaugeInterval){
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		this.gaugeInterval = Math.max(1, gaugeInterval);
+		for(int i = 0; i < phases.length; i++){
+			phases[i] = new LatencyHistogram();
+		}
+		//Only HotSpot-like JVMs can tell how much a thread allocated
+		if(threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported())
+			allocation = (com.sun.management.ThreadMXBean) threads;
+		else
+			allocation = null;
+	}
+
+	/*
+	 * registers this recorder with the platform MBean server as
+	 * robotLocalisationHMM:type=StepMetrics,name=<name>
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("robotLocalisationHMM:type=StepMetrics,name=" + ObjectName.quote(name));
+
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/*
+	 * called by the estimator around a step
+	 */
+	void startStep(){
+		if(allocation != null)
+			allocationStart = allocation.getCurrentThreadAllocatedBytes();
+	}
+	void record(int phase, long nanos){
+		phases[phase].record(nanos);
+	}
+	/*
+	 * returns true when the gauges are due, i.e. the caller should call recordBelief
+	 */
+	boolean endStep(){
+		if(allocation != null){
+			allocatedBytes += allocation.getCurrentThreadAllocatedBytes() - allocationStart;
+			allocationSteps++;
+		}
+		return ++steps % gaugeInterval == 0;
+	}
+	void recordBelief(double entropy, double peak){
+		this.entropy = entropy;
+		this.peak = peak;
+	}
+
+	@Override
+	public long getSteps() {
+		return steps;
+	}
+	@Override
+	public long getStepP50Nanos() {
+		return phases[STEP].getValueAtPercentile(50);
+	}
+	@Override
+	public long getStepP99Nanos() {
+		return phases[STEP].getValueAtPercentile(99);
+	}
+	@Override
+	public long getStepP999Nanos() {
+		return phases[STEP].getValueAtPercentile(99.9);
+	}
+	@Override
+	public long getStepMaxNanos() {
+		return phases[STEP].getMax();
+	}
+	@Override
+	public double getAllocatedBytesPerStep() {
+		return allocationSteps == 0 ? 0 : (double) allocatedBytes/allocationSteps;
+	}
+	@Override
+	public double getBeliefEntropy() {
+		return entropy;
+	}
+	@Override
+	public double getPeakProbability() {
+		return peak;
+	}
+
+	public LatencyHistogram getHistogram(int phase) {
+		return phases[phase];
+	}
+
+	@Override
+	public long percentileNanos(String phase, double percentile) {
+		for(int i = 0; i < PHASES.length; i++){
+			if(PHASES[i].equalsIgnoreCase(phase))
+				return phases[i].getValueAtPercentile(percentile);
+		}
+		throw new IllegalArgumentException("Unknown phase " + phase + ", expected move, sense, estimate or step");
+	}
+
+	@Override
+	public String summary() {
+		StringBuilder s = new StringBuilder();
+		LatencyHistogram h;
+
+		s.append(String.format(Locale.ROOT, "steps=%d allocated/step=%.1fB entropy=%.3f peak=%.4f%n",
+				steps, getAllocatedBytesPerStep(), entropy, peak));
+		for(int i = 0; i < PHASES.length; i++){
+			h = phases[i];
+			s.append(String.format(Locale.ROOT, "%-8s mean=%.0f p50=%d p90=%d p99=%d p99.9=%d max=%d ns%n", PHASES[i],
+					h.getMean(), h.getValueAtPercentile(50), h.getValueAtPercentile(90), h.getValueAtPercentile(99),
+					h.getValueAtPercentile(99.9), h.getMax()));
+		}
+		return s.toString();
+	}
+
+	@Override
+	public void reset() {
+		for(LatencyHistogram h : phases){
+			h.reset();
+		}
+		steps = allocatedBytes = allocationSteps = 0;
+	}
+}
@@ -0,0 +1,24 @@
+package model;
+
+/*
+ * JMX view of StepMetrics. Latencies are in nanoseconds; phases are "move", "sense",
+ * "estimate" and "step" (the whole update).
+ */
+public interface StepMetricsMBean {
+
+	public boolean isEnabled();
+	public void setEnabled(boolean enabled);
+
+	public long getSteps();
+	public long getStepP50Nanos();
+	public long getStepP99Nanos();
+	public long getStepP999Nanos();
+	public long getStepMaxNanos();
+	public double getAllocatedBytesPerStep();
+	public double getBeliefEntropy();
+	public double getPeakProbability();
+
+	public long percentileNanos(String phase, double percentile);
+	public String summary();
+	public void reset();
+}
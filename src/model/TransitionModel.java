@@ -0,0 +1,44 @@
+package model;
+
+import java.util.Arrays;
+
+/*
+ * Read access to the transition model T of a rows*cols*head grid, with states indexed as
+ * (row*cols + col)*head + heading. Only the non-zero entries of each row (the successors of
+ * a state) and of each column (its predecessors) are exposed, in increasing state order.
+ */
+public interface TransitionModel {
+
+	public int getNumStates();
+
+	/*
+	 * returns the entry Tij, i.e. the probability to go from state i to state j
+	 */
+	public double get(int from, int to);
+
+	/*
+	 * number of non-zero entries in row "from"; they are read through target(from,k)
+	 * and prob(from,k) for k = 0..degree(from)-1
+	 */
+	public int degree(int from);
+	public int target(int from, int k);
+	public double prob(int from, int k);
+
+	/*
+	 * number of non-zero entries in column "to", i.e. the states that can move into "to";
+	 * they are read through source(to,k) and inProb(to,k) for k = 0..inDegree(to)-1
+	 */
+	public int inDegree(int to);
+	public int source(int to, int k);
+	public double inProb(int to, int k);
+
+	/*
+	 * writes row "from" of T into probs, one entry per state
+	 */
+	public default void getRow(int from, double[] probs){
+		Arrays.fill(probs, 0, getNumStates(), 0);
+		for(int k = 0; k < degree(from); k++){
+			probs[target(from,k)] = prob(from,k);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Forward step written with the (incubating) JDK Vector API. The columns of T are laid out as
+ * four planes, plane k holding the k-th predecessor of every state and its probability (a state
+ * with fewer predecessors points at itself with probability 0), so a run of consecutive states
+ * is updated with four gathers and four fused multiply-adds per lane. The "nothing" weights are
+ * kept per state so the observation scaling and the normalisation are vector operations too.
+ * Real readings only touch a 5x5 window, which is left to the scalar filter.
+ *
+ * Needs --add-modules jdk.incubator.vector; use ForwardFilter.vectorized to fall back to the
+ * scalar code when the module is not there.
+ */
+public class VectorForwardFilter implements ForwardFilter {
+
+	//Widest species the CPU supports, e.g. 4 doubles with AVX2 and 8 with AVX-512
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private final int cols, head;
+	private final ForwardFilter scalar;
+	private final int[][] source;
+	private final double[][] prob;
+	private final double[] nothing;
+
+	public VectorForwardFilter(int rows, int cols, TransitionModel T, ObservationModel O){
+		int states = rows*cols*4, degree;
+
+		this.cols = cols;
+		this.head = 4;
+		this.scalar = new SparseForwardFilter(rows, cols, T, O);
+
+		source = new int[SparseTransitionModel.MAX_DEGREE][states];
+		prob = new double[SparseTransitionModel.MAX_DEGREE][states];
+		for(int i = 0; i < states; i++){
+			degree = T.inDegree(i);
+			for(int k = 0; k < SparseTransitionModel.MAX_DEGREE; k++){
+				source[k][i] = k < degree ? T.source(i,k) : i;
+				prob[k][i] = k < degree ? T.inProb(i,k) : 0;
+			}
+		}
+
+		nothing = new double[states];
+		for(int i = 0; i < states; i++){
+			nothing[i] = O.get(-1,-1,i/head/cols,(i/head)%cols);
+		}
+	}
+
+	/*
+	 * number of doubles processed per vector operation
+	 */
+	public static int lanes(){
+		return SPECIES.length();
+	}
+
+	@Override
+	public double propagate(double[] f, double[] next, int rX, int rY, int fromRow, int toRow, int fromCol, int toCol) {
+		double sumf = 0;
+
+		if(rX >= 0 && rY >= 0)
+			return scalar.propagate(f, next, rX, rY, fromRow, toRow, fromCol, toCol);
+		//Whole rows are contiguous in memory, so they are done in one go
+		if(fromCol == 0 && toCol == cols)
+			return propagate(f, next, fromRow*cols*head, toRow*cols*head);
+		for(int row = fromRow; row < toRow; row++){
+			sumf += propagate(f, next, (row*cols + fromCol)*head, (row*cols + toCol)*head);
+		}
+		return sumf;
+	}
+
+	//"nothing" update of the states [from,to)
+	private double propagate(double[] f, double[] next, int from, int to){
+		DoubleVector sum = DoubleVector.zero(SPECIES), newf;
+		double tail = 0, value;
+		int i = from, bound = from + SPECIES.loopBound(to - from);
+
+		for(; i < bound; i += SPECIES.length()){
+			newf = DoubleVector.zero(SPECIES);
+			for(int k = 0; k < SparseTransitionModel.MAX_DEGREE; k++){
+				newf = DoubleVector.fromArray(SPECIES, prob[k], i).fma(DoubleVector.fromArray(SPECIES, f, 0, source[k], i), newf);
+			}
+			newf = newf.mul(DoubleVector.fromArray(SPECIES, nothing, i));
+			newf.intoArray(next, i);
+			sum = sum.add(newf);
+		}
+		for(; i < to; i++){
+			value = 0;
+			for(int k = 0; k < SparseTransitionModel.MAX_DEGREE; k++){
+				value += prob[k][i]*f[source[k][i]];
+			}
+			next[i] = value*nothing[i];
+			tail += next[i];
+		}
+		return sum.reduceLanes(VectorOperators.ADD) + tail;
+	}
+
+	@Override
+	public void scale(double[] v, double alpha, int from, int to) {
+		int i = from, bound = from + SPECIES.loopBound(to - from);
+
+		for(; i < bound; i += SPECIES.length()){
+			DoubleVector.fromArray(SPECIES, v, i).mul(alpha).intoArray(v, i);
+		}
+		for(; i < to; i++){
+			v[i] *= alpha;
+		}
+	}
+}
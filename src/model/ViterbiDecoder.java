@@ -0,0 +1,277 @@
+package model;
+
+/*
+ * Online Viterbi decoding of the most likely sequence of states for a stream of readings.
+ * Each step keeps, for every state, the probability of the best path ending there (scaled so
+ * the largest is 1) and a back-pointer to its predecessor, found by walking the columns of T,
+ * so a step costs O(states). The back-pointers of the steps that are not decided yet live in a
+ * ring buffer of capacity*states ints. Every path is also tagged with the state it went through
+ * at the oldest undecided step; once all surviving paths carry the same tag they share a prefix,
+ * which is emitted and dropped. If the buffer fills up before that happens the paths that do
+ * not go through the ancestor of the current best state are dropped. That is the usual case at
+ * the start: the robot always changes cell, so paths on the two colours of a chessboard never
+ * meet, and the buffer should hold a few dozen steps for the choice to be a safe one. If that
+ * choice turns out to be wrong and a later reading cannot be explained at all, the decoder starts
+ * over from that reading, as it does for the first one.
+ */
+public class ViterbiDecoder {
+
+	/*
+	 * receives the decided states in increasing step order, steps counted from 1
+	 */
+	public interface PathConsumer {
+		public void accept(long t, int state);
+	}
+
+	private final int rows, cols, head, states, capacity;
+	private final TransitionModel T;
+	private final ObservationModel O;
+	private final PathConsumer out;
+	private double[] delta, deltaNext;
+	//back[(t % capacity)*states + s] is the state at t-1 of the best path to s at t
+	private final int[] back;
+	//State each surviving path goes through at step pending
+	private int[] origin, ancestor, next;
+	private final int[] path;
+	private long t, pending;
+
+	public ViterbiDecoder(HMMModel model, int capacity, PathConsumer out){
+		if(capacity < 1)
+			throw new IllegalArgumentException("The decoder needs room for at least one step");
+		this.rows = model.getNumRows();
+		this.cols = model.getNumCols();
+		this.head = model.getNumHead();
+		this.states = model.getNumStates();
+		this.capacity = capacity;
+		this.T = model.getTransitionModel();
+		this.O = model.getObservationModel();
+		this.out = out;
+
+		delta = new double[states];
+		deltaNext = new double[states];
+		back = new int[capacity*states];
+		origin = new int[states];
+		ancestor = new int[states];
+		next = new int[states];
+		path = new int[capacity + 1];
+		pending = 1;
+	}
+
+	/*
+	 * adds the reading of the next step, (-1,-1) for "nothing", and emits whatever steps
+	 * become decided
+	 */
+	public void observe(int rX, int rY){
+		double[] swap;
+		int[] swapInt;
+
+		if(t > 0 && t + 1 - pending > capacity)
+			force();
+		t++;
+		if(t > 1 && step(rX,rY)){
+			swap = delta;
+			delta = deltaNext;
+			deltaNext = swap;
+			swapInt = origin;
+			origin = next;
+			next = swapInt;
+		} else {
+			//First reading, or one that none of the kept paths explains: start over from it
+			if(t - 1 >= pending)
+				emit(best(), t - 1);
+			initial(rX,rY);
+		}
+		if(pending == t){
+			for(int s = 0; s < states; s++){
+				origin[s] = s;
+			}
+		}
+		if(converged())
+			decide();
+	}
+
+	/*
+	 * emits the rest of the best path found so far and starts a new sequence
+	 */
+	public void finish(){
+		if(t >= pending)
+			emit(best(), t);
+		t = 0;
+		pending = 1;
+	}
+
+	/*
+	 * number of steps read so far
+	 */
+	public long getStep(){
+		return t;
+	}
+
+	/*
+	 * last step whose state has been emitted
+	 */
+	public long getDecidedStep(){
+		return pending - 1;
+	}
+
+	/*
+	 * last state of the best path so far; it may still change
+	 */
+	public int getMostLikelyState(){
+		return best();
+	}
+
+	private void initial(int rX, int rY){
+		double o;
+
+		for(int row = 0; row < rows; row++){
+			for(int col = 0; col < cols; col++){
+				o = O.get(rX,rY,row,col);
+				for(int h = 0; h < head; h++){
+					delta[(row*cols + col)*head + h] = o;
+				}
+			}
+		}
+		scale(delta);
+	}
+
+	//delta_t(j) = O_r(j) * max_i delta_t-1(i)*T(i,j), remembering the best i.
+	//Returns false if no state is left with a non-zero value
+	private boolean step(int rX, int rY){
+		int base = (int) (t % capacity)*states, state, best;
+		double o, value, candidate;
+
+		for(int row = 0; row < rows; row++){
+			for(int col = 0; col < cols; col++){
+				o = O.get(rX,rY,row,col);
+				for(int h = 0; h < head; h++){
+					state = (row*cols + col)*head + h;
+					value = 0;
+					best = T.inDegree(state) > 0 ? T.source(state,0) : state;
+					for(int k = 0; k < T.inDegree(state); k++){
+						candidate = delta[T.source(state,k)]*T.inProb(state,k);
+						if(candidate > value){
+							value = candidate;
+							best = T.source(state,k);
+						}
+					}
+					deltaNext[state] = o*value;
+					back[base + state] = best;
+					next[state] = origin[best];
+				}
+			}
+		}
+		return scale(deltaNext);
+	}
+
+	//Only the ratios matter, so the largest value is kept at 1 to avoid underflow
+	private boolean scale(double[] v){
+		double max = 0;
+
+		for(int s = 0; s < states; s++){
+			max = Math.max(max, v[s]);
+		}
+		if(max == 0)
+			return false;
+		for(int s = 0; s < states; s++){
+			v[s] /= max;
+		}
+		return true;
+	}
+
+	private int best(){
+		int best = 0;
+
+		for(int s = 1; s < states; s++){
+			if(delta[s] > delta[best])
+				best = s;
+		}
+		return best;
+	}
+
+	private boolean converged(){
+		int common = -1;
+
+		for(int s = 0; s < states; s++){
+			if(delta[s] > 0){
+				if(common < 0)
+					common = origin[s];
+				else if(origin[s] != common)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	//The buffer is full: keep only the paths that agree with the best one at step pending
+	private void force(){
+		int keep = origin[best()];
+
+		for(int s = 0; s < states; s++){
+			if(origin[s] != keep)
+				delta[s] = 0;
+		}
+		decide();
+	}
+
+	/*
+	 * all surviving paths go through the same state at step pending. Walks them back from t
+	 * to find the latest step k where they meet, emits pending..k and retags the paths with
+	 * their state at k+1.
+	 */
+	private void decide(){
+		long k = t;
+		int[] swap;
+		int common, base;
+
+		for(int s = 0; s < states; s++){
+			ancestor[s] = s;
+		}
+		while((common = common(ancestor)) < 0){
+			base = (int) (k % capacity)*states;
+			swap = next;
+			next = ancestor;
+			ancestor = swap;
+			for(int s = 0; s < states; s++){
+				if(delta[s] > 0)
+					ancestor[s] = back[base + next[s]];
+			}
+			k--;
+		}
+		emit(common, k);
+		if(k < t){
+			swap = origin;
+			origin = next;
+			next = swap;
+		}
+	}
+
+	//The state all surviving paths share in a, or -1 if they differ
+	private int common(int[] a){
+		int common = -1;
+
+		for(int s = 0; s < states; s++){
+			if(delta[s] > 0){
+				if(common < 0)
+					common = a[s];
+				else if(a[s] != common)
+					return -1;
+			}
+		}
+		return common;
+	}
+
+	//Emits the path that ends in state at step k, from step pending on
+	private void emit(int state, long k){
+		int n = (int) (k - pending);
+
+		path[n] = state;
+		for(int i = n; i > 0; i--){
+			path[i - 1] = back[(int) ((pending + i) % capacity)*states + path[i]];
+		}
+		for(int i = 0; i <= n; i++){
+			out.accept(pending + i, path[i]);
+		}
+		pending = k + 1;
+	}
+}
@@ -0,0 +1,66 @@
+package control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import view.Viewer;
+
+public class LocalizationDriverTest {
+
+	//Stands in for a viewer, counting its steps
+	private static class CountingViewer implements Viewer {
+		final AtomicInteger steps = new AtomicInteger();
+		volatile boolean runFlag;
+		volatile Viewer controls = this;
+
+		public void setRunFlag( boolean run) {
+			runFlag = run;
+		}
+		public void initLocViewer() {
+		}
+		public void updateOneStep() {
+			steps.incrementAndGet();
+		}
+		public void setControls( Viewer controls) {
+			this.controls = controls;
+		}
+	}
+
+	@Test
+	public void stopPausesTheScheduler() throws InterruptedException {
+		CountingViewer viewer = new CountingViewer();
+		LocalizationDriver driver = new LocalizationDriver( 10, viewer);
+		StepScheduler scheduler = driver.getScheduler();
+		int steps;
+
+		driver.start();
+		assertSame( driver, viewer.controls);
+		Thread.sleep( 100);
+		assertEquals( 0, viewer.steps.get());
+
+		//What the Go, Stop and One step buttons do
+		viewer.controls.setRunFlag( true);
+		assertTrue( viewer.runFlag);
+		Thread.sleep( 200);
+		viewer.controls.setRunFlag( false);
+		Thread.sleep( 100);
+		steps = viewer.steps.get();
+		assertTrue( steps > 0);
+		viewer.controls.updateOneStep();
+		StepSchedulerTest.await( () -> viewer.steps.get() == steps + 1);
+		Thread.sleep( 500);
+		assertEquals( steps + 1, viewer.steps.get());
+		viewer.controls.setRunFlag( true);
+		Thread.sleep( 200);
+		driver.shutdown();
+
+		assertSame( viewer, viewer.controls);
+		assertTrue( scheduler.getMaxLag() < 5*StepSchedulerTest.PERIOD, scheduler.lagReport());
+		assertTrue( scheduler.getSkipped() < 5, scheduler.lagReport());
+	}
+}
@@ -0,0 +1,49 @@
+package control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import model.HMMModel;
+import model.HMMPredictor;
+import view.BeliefFrame;
+
+public class SimulationPipelineTest {
+
+	@Test
+	public void stopIsNotLagAndShowsTheLastStep() throws InterruptedException {
+		AtomicReference<BeliefFrame> shown = new AtomicReference<BeliefFrame>();
+		SimulationPipeline pipeline = new SimulationPipeline( new HMMPredictor( new HMMModel( 6, 6), new SplittableRandom( 1)), shown::set, 10);
+		StepScheduler scheduler = pipeline.getScheduler();
+		long steps;
+
+		pipeline.start();
+		//Not stepping before Init
+		pipeline.setRunFlag( true);
+		Thread.sleep( 100);
+		assertEquals( 0, pipeline.getSteps());
+		pipeline.initLocViewer();
+		Thread.sleep( 200);
+		pipeline.setRunFlag( false);
+		Thread.sleep( 100);
+		steps = pipeline.getSteps();
+		assertTrue( steps > 0);
+		//The worker showed the state it stopped at
+		StepSchedulerTest.await( () -> shown.get() != null && shown.get().getStep() == steps);
+
+		pipeline.updateOneStep();
+		StepSchedulerTest.await( () -> shown.get().getStep() == steps + 1);
+		Thread.sleep( 500);
+		assertEquals( steps + 1, pipeline.getSteps());
+		pipeline.setRunFlag( true);
+		Thread.sleep( 200);
+		pipeline.shutdown();
+
+		assertTrue( scheduler.getMaxLag() < 5*StepSchedulerTest.PERIOD, scheduler.lagReport());
+		assertTrue( scheduler.getSkipped() < 5, scheduler.lagReport());
+	}
+}
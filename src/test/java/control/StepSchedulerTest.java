@@ -0,0 +1,78 @@
+package control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+public class StepSchedulerTest {
+
+	static final long PERIOD = 10000000L;
+
+	//Waits up to a second for condition
+	static void await( BooleanSupplier condition) throws InterruptedException {
+		for( int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+			Thread.sleep( 10);
+		}
+		assertTrue( condition.getAsBoolean());
+	}
+
+	@Test
+	public void pauseIsNotCountedAsLag() throws InterruptedException {
+		StepScheduler scheduler = new StepScheduler( () -> {}, PERIOD, StepScheduler.Policy.SKIP);
+		long steps;
+
+		scheduler.start();
+		Thread.sleep( 200);
+		scheduler.pause();
+		Thread.sleep( 100);
+		steps = scheduler.getSteps();
+		Thread.sleep( 500);
+		assertEquals( steps, scheduler.getSteps());
+		scheduler.resume();
+		Thread.sleep( 200);
+		scheduler.shutdown();
+
+		assertTrue( scheduler.getMaxLag() < 5*PERIOD, scheduler.lagReport());
+		assertTrue( scheduler.getSkipped() < 5, scheduler.lagReport());
+	}
+
+	@Test
+	public void requestedStepsRunWhilePaused() throws InterruptedException {
+		AtomicInteger steps = new AtomicInteger(), idle = new AtomicInteger(), stepsWhenIdle = new AtomicInteger();
+		StepScheduler scheduler = new StepScheduler( steps::incrementAndGet, PERIOD, StepScheduler.Policy.SKIP);
+
+		scheduler.setOnPause( () -> {
+			stepsWhenIdle.set( steps.get());
+			idle.incrementAndGet();
+		});
+		scheduler.pause();
+		scheduler.start();
+		//Starting paused goes idle once
+		await( () -> idle.get() == 1);
+		Thread.sleep( 100);
+		assertEquals( 0, steps.get());
+
+		scheduler.requestStep();
+		scheduler.requestStep();
+		//and so does every requested step, after it ends
+		await( () -> idle.get() == 3);
+		assertEquals( 2, steps.get());
+		assertEquals( 2, stepsWhenIdle.get());
+		assertEquals( 2, scheduler.getSteps());
+		assertEquals( 0, scheduler.getMaxLag());
+
+		//Ignored while running
+		scheduler.resume();
+		scheduler.requestStep();
+		//pausing before a scheduled step has run would never leave the idle state
+		await( () -> steps.get() > 2);
+		scheduler.pause();
+		await( () -> idle.get() == 4);
+		assertEquals( steps.get(), stepsWhenIdle.get());
+		scheduler.shutdown();
+	}
+}
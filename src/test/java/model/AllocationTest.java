@@ -0,0 +1,68 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * A step of the estimator must not allocate once it is warmed up, measured with the same
+ * per-thread allocation counter StepMetrics uses
+ */
+public class AllocationTest {
+
+	private static final int WARMUP = 20000, STEPS = 10000;
+
+	private static long allocatedBytes(){
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+		return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+	}
+
+	private static void assertNoAllocation(Runnable step){
+		long before;
+
+		for(int i = 0; i < WARMUP; i++){
+			step.run();
+		}
+		before = allocatedBytes();
+		for(int i = 0; i < STEPS; i++){
+			step.run();
+		}
+		//Reading the counter costs a few hundred bytes once, whatever the number of steps
+		assertEquals(0, (allocatedBytes() - before)/STEPS, "bytes allocated per step");
+	}
+
+	@Test
+	public void updateDoesNotAllocate(){
+		HMMPredictor estimator = new HMMPredictor(new HMMModel(12, 10), new SplittableRandom(1));
+
+		assertNoAllocation(estimator::update);
+	}
+
+	@Test
+	public void matrixFreeUpdateDoesNotAllocate(){
+		HMMPredictor estimator = new HMMPredictor(new HMMModel(12, 10, true, false), new SplittableRandom(2));
+
+		assertNoAllocation(estimator::update);
+	}
+
+	@Test
+	public void observeDoesNotAllocate(){
+		HMMModel model = new HMMModel(12, 10);
+		RobotSimulator robot = new RobotSimulator(12, 10, model.getTransitionModel(), model.getObservationModel(), new SplittableRandom(3));
+		HMMPredictor estimator = new HMMPredictor(model, new SplittableRandom(4));
+
+		assertNoAllocation(() -> {
+			robot.move();
+			robot.sense();
+			estimator.observe(robot.getReading()[0], robot.getReading()[1]);
+		});
+	}
+}
@@ -0,0 +1,80 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * BatchEstimator against one HMMPredictor per robot fed the same readings. The batch kernel
+ * multiplies in another order, so the beliefs only agree up to rounding.
+ */
+public class BatchEstimatorTest {
+
+	private static final int ROWS = 7, COLS = 6, ROBOTS = 5;
+	private static final double TOLERANCE = 1e-12;
+
+	private final HMMModel model = new HMMModel(ROWS, COLS);
+	private final RobotSimulator[] robots = new RobotSimulator[ROBOTS];
+	private final HMMPredictor[] single = new HMMPredictor[ROBOTS];
+	private final BatchEstimator batch = new BatchEstimator(model, ROBOTS);
+	private final int[] rX = new int[ROBOTS], rY = new int[ROBOTS];
+
+	public BatchEstimatorTest(){
+		for(int r = 0; r < ROBOTS; r++){
+			robots[r] = new RobotSimulator(ROWS, COLS, model.getTransitionModel(), model.getObservationModel(), new SplittableRandom(r));
+			single[r] = new HMMPredictor(model, new SplittableRandom(100 + r));
+		}
+	}
+
+	//Every robot takes a step of its own, with its own reading
+	private void step(){
+		for(int r = 0; r < ROBOTS; r++){
+			robots[r].move();
+			robots[r].sense();
+			rX[r] = robots[r].getReading()[0];
+			rY[r] = robots[r].getReading()[1];
+			single[r].observe(rX[r], rY[r]);
+		}
+		batch.update(rX, rY);
+	}
+
+	private void assertSameBeliefs(String step){
+		for(int r = 0; r < ROBOTS; r++){
+			for(int x = 0; x < ROWS; x++){
+				for(int y = 0; y < COLS; y++){
+					assertEquals(single[r].getCurrentProb(x, y), batch.getCurrentProb(r, x, y), TOLERANCE, "robot " + r + ", " + step);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void matchesIndependentEstimators(){
+		assertEquals(ROBOTS, batch.getNumRobots());
+		for(int t = 0; t < 200; t++){
+			step();
+			assertSameBeliefs("step " + t);
+		}
+	}
+
+	@Test
+	public void resetOnlyAffectsOneRobot(){
+		for(int t = 0; t < 50; t++){
+			step();
+		}
+		batch.reset(2);
+		single[2] = new HMMPredictor(model, new SplittableRandom(200));
+		for(int x = 0; x < ROWS; x++){
+			for(int y = 0; y < COLS; y++){
+				assertEquals(1.0/(ROWS*COLS), batch.getCurrentProb(2, x, y), TOLERANCE);
+			}
+		}
+		assertSameBeliefs("reset");
+		for(int t = 0; t < 50; t++){
+			step();
+			assertSameBeliefs("step " + t + " after the reset");
+		}
+	}
+}
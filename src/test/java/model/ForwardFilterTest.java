@@ -0,0 +1,122 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The forward step engines against the dense O*T'*f of the original estimator, which went over
+ * every pair of states. Zero terms add nothing and the rest are summed in the same order, so the
+ * results must be identical, not merely close.
+ */
+public class ForwardFilterTest {
+
+	private static final int STEPS = 200;
+
+	//One dense step as the original posEstimate did it, normalised into next
+	private static void denseStep(HMMModel model, double[] f, double[] next, int rX, int rY){
+		TransitionModel T = model.getTransitionModel();
+		ObservationModel O = model.getObservationModel();
+		int states = model.getNumStates(), cols = model.getNumCols();
+		double sumf = 0, o, alpha;
+
+		for(int i = 0; i < states; i++){
+			o = O.get(rX, rY, i/4/cols, (i/4)%cols);
+			next[i] = 0;
+			for(int j = 0; j < states; j++){
+				next[i] += T.get(j, i)*o*f[j];
+			}
+			sumf += next[i];
+		}
+		alpha = 1/sumf;
+		for(int i = 0; i < states; i++){
+			next[i] = alpha*next[i];
+		}
+	}
+
+	//Runs the estimator on the robot's readings, "nothing" included, step by step against the dense filter
+	private static void assertMatchesDense(int rows, int cols, boolean matrixFree, boolean denseObservations){
+		HMMModel model = new HMMModel(rows, cols, matrixFree, denseObservations);
+		RobotSimulator robot = new RobotSimulator(rows, cols, model.getTransitionModel(), model.getObservationModel(), new SplittableRandom(rows*31 + cols));
+		HMMPredictor estimator = new HMMPredictor(model, new SplittableRandom(1));
+		int states = model.getNumStates(), nothing = 0;
+		double[] f = new double[states], next = new double[states], swap, expected = new double[rows*cols], actual = new double[rows*cols];
+		String name = rows + "x" + cols + (matrixFree ? " stencil" : " sparse") + (denseObservations ? ", dense O" : "");
+
+		Arrays.fill(f, 1/(double) states);
+		for(int t = 0; t < STEPS; t++){
+			robot.move();
+			robot.sense();
+			if(robot.getReading()[0] < 0)
+				nothing++;
+			denseStep(model, f, next, robot.getReading()[0], robot.getReading()[1]);
+			swap = f;
+			f = next;
+			next = swap;
+			estimator.observe(robot.getReading()[0], robot.getReading()[1]);
+
+			for(int x = 0; x < rows; x++){
+				for(int y = 0; y < cols; y++){
+					expected[x*cols + y] = f[(x*cols + y)*4] + f[(x*cols + y)*4 + 1] + f[(x*cols + y)*4 + 2] + f[(x*cols + y)*4 + 3];
+					actual[x*cols + y] = estimator.getCurrentProb(x, y);
+				}
+			}
+			assertArrayEquals(expected, actual, 0, name + ", step " + t);
+		}
+		//Both kinds of reading were covered
+		assertTrue(nothing > 0 && nothing < STEPS, name);
+	}
+
+	@Test
+	public void enginesMatchDenseFilter(){
+		for(int size = 2; size <= 8; size++){
+			for(boolean matrixFree : new boolean[] {false, true}){
+				assertMatchesDense(size, size, matrixFree, false);
+			}
+			assertMatchesDense(size, size, false, true);
+		}
+		assertMatchesDense(3, 7, false, false);
+		assertMatchesDense(7, 3, true, false);
+		assertMatchesDense(5, 4, false, true);
+	}
+
+	@Test
+	public void propagateMatchesDenseOverWindows(){
+		HMMModel model = new HMMModel(9, 8);
+		int states = model.getNumStates();
+		ForwardFilter[] filters = {
+				new SparseForwardFilter(9, 8, model.getTransitionModel(), model.getObservationModel()),
+				new StencilForwardFilter(9, 8, model.getObservationModel())};
+		SplittableRandom random = new SplittableRandom(5);
+		double[] f = new double[states], expected = new double[states], actual = new double[states];
+		double sum = 0, actualSum;
+
+		for(int i = 0; i < states; i++){
+			f[i] = random.nextDouble();
+			sum += f[i];
+		}
+		for(int i = 0; i < states; i++){
+			f[i] /= sum;
+		}
+		//A reading in the middle, one in a corner and "nothing"
+		for(int[] reading : new int[][] {{4, 3}, {0, 7}, {-1, -1}}){
+			denseStep(model, f, expected, reading[0], reading[1]);
+			for(ForwardFilter filter : filters){
+				Arrays.fill(actual, 0);
+				if(reading[0] < 0){
+					actualSum = filter.propagate(f, actual, -1, -1, 0, 9, 0, 8);
+				} else {
+					//The window the estimator computes for a real reading; the rest stays 0
+					actualSum = filter.propagate(f, actual, reading[0], reading[1], Math.max(0, reading[0] - 2), Math.min(9, reading[0] + 3),
+							Math.max(0, reading[1] - 2), Math.min(8, reading[1] + 3));
+				}
+				filter.scale(actual, 1/actualSum, 0, states);
+				assertArrayEquals(expected, actual, 0, filter.getClass().getSimpleName() + " for " + Arrays.toString(reading));
+			}
+		}
+	}
+}
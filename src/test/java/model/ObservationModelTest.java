@@ -0,0 +1,65 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class ObservationModelTest {
+
+	@Test
+	public void defaultKernelIsACopy(){
+		double[] kernel = ObservationModel.defaultKernel();
+
+		kernel[0] = 1;
+		assertArrayEquals(new double[] {0.1, 0.05, 0.025}, ObservationModel.defaultKernel());
+		assertEquals(0.1, new ObservationModel(5, 5).get(2, 2, 2, 2));
+	}
+
+	@Test
+	public void rejectsInvalidKernels(){
+		assertThrows(IllegalArgumentException.class, () -> new ObservationModel(5, 5, new double[0], false));
+		assertThrows(IllegalArgumentException.class, () -> new ObservationModel(5, 5, new double[] {0.2, -0.01}, false));
+		assertThrows(IllegalArgumentException.class, () -> new ObservationModel(5, 5, new double[] {Double.NaN}, false));
+		//0.5 + 8*0.2 > 1, "nothing" would be -1.1 at an interior cell
+		assertThrows(IllegalArgumentException.class, () -> new ObservationModel(5, 5, new double[] {0.5, 0.2}, false));
+	}
+
+	@Test
+	public void rejectsGridsThinnerThanTwo(){
+		//Both transition engines need a neighbour in each axis, so every model fails the same way
+		for(int[] size : new int[][] {{1, 5}, {5, 1}, {1, 1}, {0, 4}}){
+			assertThrows(IllegalArgumentException.class, () -> new ObservationModel(size[0], size[1]));
+			assertThrows(IllegalArgumentException.class, () -> new HMMModel(size[0], size[1]));
+			assertThrows(IllegalArgumentException.class, () -> new HMMModel(size[0], size[1], true, false));
+		}
+	}
+
+	@Test
+	public void rowsSumToOne(){
+		double[][] kernels = {{0.1, 0.05, 0.025}, {1}, {0.2, 0.1}, {0.1, 0.04, 0.02, 0.01}};
+		int rows = 7, cols = 6;
+		double sum;
+
+		for(double[] kernel : kernels){
+			for(boolean precomputed : new boolean[] {false, true}){
+				ObservationModel O = new ObservationModel(rows, cols, kernel, precomputed);
+
+				for(int x = 0; x < rows; x++){
+					for(int y = 0; y < cols; y++){
+						sum = O.get(-1, -1, x, y);
+						for(int rX = 0; rX < rows; rX++){
+							for(int rY = 0; rY < cols; rY++){
+								sum += O.get(rX, rY, x, y);
+							}
+						}
+						assertEquals(1, sum, 1e-12);
+						assertTrue(O.get(-1, -1, x, y) >= 0);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * ParallelForwardFilter with a threshold small enough that every call is split into bands, against
+ * the filter it wraps. Each entry is computed by the same code, so the entries must be identical;
+ * only the sum is added up in another order.
+ */
+public class ParallelForwardFilterTest {
+
+	private static final int ROWS = 13, COLS = 11, THRESHOLD = 8;
+
+	private final HMMModel model = new HMMModel(ROWS, COLS);
+	private final int states = model.getNumStates();
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@AfterEach
+	public void shutdown(){
+		pool.shutdown();
+	}
+
+	private double[] randomBelief(){
+		SplittableRandom random = new SplittableRandom(3);
+		double[] f = new double[states];
+
+		for(int i = 0; i < states; i++){
+			f[i] = random.nextDouble()/states;
+		}
+		return f;
+	}
+
+	private void assertSameStep(ForwardFilter serial, int rX, int rY, int fromRow, int toRow, int fromCol, int toCol){
+		ForwardFilter parallel = new ParallelForwardFilter(serial, pool, THRESHOLD);
+		double[] f = randomBelief(), expected = new double[states], actual = new double[states];
+		double expectedSum = serial.propagate(f, expected, rX, rY, fromRow, toRow, fromCol, toCol);
+
+		assertEquals(expectedSum, parallel.propagate(f, actual, rX, rY, fromRow, toRow, fromCol, toCol), 1e-12*expectedSum);
+		assertArrayEquals(expected, actual, 0);
+
+		serial.scale(expected, 1/expectedSum, 0, states);
+		parallel.scale(actual, 1/expectedSum, 0, states);
+		assertArrayEquals(expected, actual, 0);
+		//A part of the array only
+		serial.scale(expected, 3, 17, states - 5);
+		parallel.scale(actual, 3, 17, states - 5);
+		assertArrayEquals(expected, actual, 0);
+	}
+
+	@Test
+	public void matchesWrappedFilterOverWholeRows(){
+		for(ForwardFilter serial : new ForwardFilter[] {model.newForwardFilter(), new StencilForwardFilter(ROWS, COLS, model.getObservationModel())}){
+			assertSameStep(serial, -1, -1, 0, ROWS, 0, COLS);
+			assertSameStep(serial, 6, 5, 0, ROWS, 0, COLS);
+		}
+	}
+
+	@Test
+	public void matchesWrappedFilterOverReadingWindow(){
+		ForwardFilter serial = model.newForwardFilter();
+
+		//The 5x5 window of a reading, and one cut by the corner
+		assertSameStep(serial, 6, 5, 4, 9, 3, 8);
+		assertSameStep(serial, 0, 10, 0, 3, 8, 11);
+	}
+
+	@Test
+	public void filteringMatchesWrappedFilter(){
+		HMMPredictor serial = new HMMPredictor(model, new SplittableRandom(9));
+		HMMPredictor parallel = new HMMPredictor(model, new SplittableRandom(9));
+		RobotSimulator robot = new RobotSimulator(ROWS, COLS, model.getTransitionModel(), model.getObservationModel(), new SplittableRandom(10));
+		double[] expected = new double[ROWS*COLS], actual = new double[ROWS*COLS];
+
+		parallel.setForwardFilter(new ParallelForwardFilter(model.newForwardFilter(), pool, THRESHOLD));
+		for(int t = 0; t < 300; t++){
+			robot.move();
+			robot.sense();
+			serial.observe(robot.getReading()[0], robot.getReading()[1]);
+			parallel.observe(robot.getReading()[0], robot.getReading()[1]);
+			serial.getCurrentProbs(expected);
+			parallel.getCurrentProbs(actual);
+			assertArrayEquals(expected, actual, 1e-9, "step " + t);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+public class ParticleFilterTest {
+
+	private static final int PARTICLES = 1 << 16;
+
+	@Test
+	public void unexplainedReadingScattersByObservationModel(){
+		HMMModel model = new HMMModel(20, 20);
+		ObservationModel O = model.getObservationModel();
+		ParticleFilter filter = new ParticleFilter(model, PARTICLES, new SplittableRandom(1));
+		double sum = 0;
+
+		//No particle near (1,1) can get within sensor range of (15,15) in one move
+		filter.observe(1, 1);
+		filter.observe(15, 15);
+		for(int x = 13; x <= 17; x++){
+			for(int y = 13; y <= 17; y++){
+				sum += O.get(15, 15, x, y);
+			}
+		}
+		for(int x = 0; x < 20; x++){
+			for(int y = 0; y < 20; y++){
+				assertEquals(O.get(15, 15, x, y)/sum, filter.getCurrentProb(x, y), 0.01, x + "," + y);
+			}
+		}
+	}
+
+	@Test
+	public void unexplainedNothingScattersOverTheGrid(){
+		//An exact sensor never reports "nothing", so no particle explains it
+		HMMModel model = new HMMModel(10, 10, true, false, new double[] {1});
+		ParticleFilter filter = new ParticleFilter(model, PARTICLES, new SplittableRandom(2));
+
+		filter.observe(-1, -1);
+		for(int x = 0; x < 10; x++){
+			for(int y = 0; y < 10; y++){
+				assertEquals(0.01, filter.getCurrentProb(x, y), 0.004, x + "," + y);
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The pruned belief must stay a distribution: pruning never drops every state, and a reading
+ * no kept state explains starts the belief over instead of leaving it empty
+ */
+public class PruningTest {
+
+	private static double assertDistribution(HMMPredictor estimator, String step){
+		double[] probs = new double[estimator.getNumRows()*estimator.getNumCols()];
+		double sum = 0;
+
+		estimator.getCurrentProbs(probs);
+		for(double p : probs){
+			assertTrue(p >= 0, step + ": " + p);
+			sum += p;
+		}
+		assertEquals(1, sum, 1e-9, step);
+		assertTrue(estimator.getActiveCells() > 0, step);
+		return sum;
+	}
+
+	@Test
+	public void flatBeliefIsNotPrunedAway(){
+		//Every state of the uniform prior is far below epsilon
+		HMMPredictor estimator = new HMMPredictor(new HMMModel(20, 20), new SplittableRandom(1));
+
+		estimator.setPruningThreshold(0.01);
+		estimator.observe(-1, -1);
+		assertDistribution(estimator, "nothing");
+		assertEquals(0, estimator.getPrunedMass());
+		//Afterwards the states near the walls stand out and the rest can be pruned
+		for(int t = 0; t < 5; t++){
+			estimator.observe(-1, -1);
+			assertDistribution(estimator, "nothing " + t);
+			assertTrue(estimator.getPrunedMass() < 1);
+		}
+		estimator.observe(10, 10);
+		assertDistribution(estimator, "reading");
+	}
+
+	@Test
+	public void unexplainedReadingReseeds(){
+		HMMModel model = new HMMModel(8, 8);
+		ObservationModel O = model.getObservationModel();
+		HMMPredictor estimator = new HMMPredictor(model, new SplittableRandom(2));
+
+		estimator.setPruningThreshold(0.2);
+		for(int t = 0; t < 5; t++){
+			estimator.observe(1, 1);
+		}
+		//Nothing kept near (1,1) can reach the sensor range of (6,6) in one move
+		estimator.observe(6, 6);
+		assertDistribution(estimator, "reseed");
+		assertEquals(1, estimator.getPrunedMass());
+		for(int x = 0; x < 8; x++){
+			for(int y = 0; y < 8; y++){
+				//In proportion to O_r: 0.1 at (6,6) against 0.05 for its neighbours
+				assertEquals(O.get(6, 6, x, y)/O.get(6, 6, 6, 6), estimator.getCurrentProb(x, y)/estimator.getCurrentProb(6, 6), 1e-12);
+			}
+		}
+		estimator.observe(6, 5);
+		assertDistribution(estimator, "after reseed");
+	}
+
+	@Test
+	public void longRunsStayDistributions(){
+		for(int size : new int[] {8, 20}){
+			for(double epsilon : new double[] {1e-3, 1e-2}){
+				HMMPredictor estimator = new HMMPredictor(new HMMModel(size, size), new SplittableRandom(size));
+
+				estimator.setPruningThreshold(epsilon);
+				for(int t = 0; t < 3000; t++){
+					estimator.update();
+					assertDistribution(estimator, size + "x" + size + ", epsilon " + epsilon + ", step " + t);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Chi-square tests of the alias-sampled moves and readings against the distributions of the
+ * transition and observation models, for every pose of a small grid
+ */
+public class RobotSimulatorTest {
+
+	private static final int ROWS = 4, COLS = 5, SAMPLES = 200000;
+	//Standard normal quantile of the significance level, 1e-5
+	private static final double Z = 4.265;
+
+	//Upper critical value of chi-square with df degrees of freedom (Wilson-Hilferty)
+	private static double critical(int df){
+		double v = 2.0/(9*df);
+
+		return df*Math.pow(1 - v + Z*Math.sqrt(v), 3);
+	}
+
+	private static void assertFits(double[] expected, long[] observed, String pose){
+		double chi2 = 0, e;
+		int df = -1;
+
+		for(int k = 0; k < expected.length; k++){
+			e = expected[k]*SAMPLES;
+			if(e == 0){
+				assertEquals(0, observed[k], "impossible outcome " + k + " drawn at " + pose);
+			} else {
+				chi2 += (observed[k] - e)*(observed[k] - e)/e;
+				df++;
+			}
+		}
+		if(df > 0)
+			assertTrue(chi2 < critical(df), "chi2 = " + chi2 + " with " + df + " degrees of freedom at " + pose);
+	}
+
+	private static void checkMoves(HMMModel model){
+		TransitionModel T = model.getTransitionModel();
+		RobotSimulator robot = new RobotSimulator(ROWS, COLS, T, model.getObservationModel(), new SplittableRandom(1));
+		double[] expected = new double[4];
+		long[] observed = new long[4];
+		int from, to, mask, last, lastTo;
+
+		for(int row = 0; row < ROWS; row++){
+			for(int col = 0; col < COLS; col++){
+				for(int h = 0; h < 4; h++){
+					from = (row*COLS + col)*4 + h;
+					Arrays.fill(expected, 0);
+					Arrays.fill(observed, 0);
+					mask = StencilTransitionModel.freeMask(ROWS, COLS, row, col);
+					last = lastTo = -1;
+					for(int d = 0; d < 4; d++){
+						if((mask & 1 << d) == 0)
+							continue;
+						to = ((row + StencilTransitionModel.DROW[d])*COLS + col + StencilTransitionModel.DCOL[d])*4 + d;
+						expected[d] = T.get(from, to);
+						if(expected[d] > 0 && to > lastTo){
+							last = d;
+							lastTo = to;
+						}
+					}
+					//Rows facing a wall add up to 0.99, the rest goes to the move to the highest state
+					expected[last] += 1 - (expected[0] + expected[1] + expected[2] + expected[3]);
+
+					for(int s = 0; s < SAMPLES; s++){
+						robot.pos[0] = row;
+						robot.pos[1] = col;
+						robot.pos[2] = h;
+						robot.move();
+						observed[robot.pos[2]]++;
+						assertEquals(row + StencilTransitionModel.DROW[robot.pos[2]], robot.pos[0]);
+						assertEquals(col + StencilTransitionModel.DCOL[robot.pos[2]], robot.pos[1]);
+					}
+					assertFits(expected, observed, "(" + row + "," + col + "," + h + ")");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void movesFollowSparseT(){
+		checkMoves(new HMMModel(ROWS, COLS));
+	}
+
+	@Test
+	public void movesFollowStencilT(){
+		checkMoves(new HMMModel(ROWS, COLS, true, false));
+	}
+
+	@Test
+	public void readingsFollowO(){
+		HMMModel model = new HMMModel(ROWS, COLS);
+		ObservationModel O = model.getObservationModel();
+		RobotSimulator robot = new RobotSimulator(ROWS, COLS, model.getTransitionModel(), O, new SplittableRandom(2));
+		//One outcome per cell, then "nothing"
+		double[] expected = new double[ROWS*COLS + 1];
+		long[] observed = new long[ROWS*COLS + 1];
+		int[] reading;
+
+		for(int row = 0; row < ROWS; row++){
+			for(int col = 0; col < COLS; col++){
+				Arrays.fill(observed, 0);
+				for(int rX = 0; rX < ROWS; rX++){
+					for(int rY = 0; rY < COLS; rY++){
+						expected[rX*COLS + rY] = O.get(rX, rY, row, col);
+					}
+				}
+				expected[ROWS*COLS] = O.get(-1, -1, row, col);
+
+				robot.pos[0] = row;
+				robot.pos[1] = col;
+				for(int s = 0; s < SAMPLES; s++){
+					robot.sense();
+					reading = robot.getReading();
+					observed[reading[0] < 0 ? ROWS*COLS : reading[0]*COLS + reading[1]]++;
+				}
+				assertFits(expected, observed, "(" + row + "," + col + ")");
+			}
+		}
+	}
+}
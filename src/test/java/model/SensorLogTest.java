@@ -0,0 +1,152 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SensorLogTest {
+
+	@TempDir
+	Path dir;
+
+	//A log with the given header and raw records
+	private Path rawLog(int rows, int cols, int... cells) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SensorLogWriter.HEADER_BYTES + cells.length*SensorLogWriter.RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		Path file = dir.resolve("raw.log");
+
+		buffer.putInt(SensorLogWriter.MAGIC).putInt(SensorLogWriter.VERSION).putInt(rows).putInt(cols);
+		for(int cell : cells){
+			buffer.putInt(cell);
+		}
+		Files.write(file, buffer.array());
+		return file;
+	}
+
+	private static void assertDistribution(HMMPredictor estimator){
+		double sum = 0;
+
+		for(int x = 0; x < estimator.getNumRows(); x++){
+			for(int y = 0; y < estimator.getNumCols(); y++){
+				assertTrue(estimator.getCurrentProb(x, y) >= 0);
+				sum += estimator.getCurrentProb(x, y);
+			}
+		}
+		assertEquals(1, sum, 1e-9);
+	}
+
+	@Test
+	public void replayMatchesObserve() throws IOException {
+		HMMModel model = new HMMModel(9, 7);
+		RobotSimulator robot = new RobotSimulator(9, 7, model.getTransitionModel(), model.getObservationModel(), new SplittableRandom(1));
+		HMMPredictor live = new HMMPredictor(model, new SplittableRandom(2)), replayed = new HMMPredictor(model, new SplittableRandom(3));
+		Path file = dir.resolve("run.log");
+		double[] expected = new double[63], actual = new double[63];
+
+		try(SensorLogWriter log = new SensorLogWriter(file, 9, 7)){
+			for(int t = 0; t < 1000; t++){
+				robot.move();
+				robot.sense();
+				log.write(robot.getReading()[0], robot.getReading()[1]);
+				live.observe(robot.getReading()[0], robot.getReading()[1]);
+			}
+		}
+		try(SensorLogReader log = new SensorLogReader(file)){
+			assertEquals(9, log.getNumRows());
+			assertEquals(7, log.getNumCols());
+			assertEquals(1000, log.getNumRecords());
+			assertEquals(1000, log.replay(replayed));
+			assertFalse(log.next());
+		}
+		live.getCurrentProbs(expected);
+		replayed.getCurrentProbs(actual);
+		assertArrayEquals(expected, actual, 0);
+	}
+
+	@Test
+	public void rejectsBadGridSizes() throws IOException {
+		assertThrows(IOException.class, () -> new SensorLogReader(rawLog(0, 5)));
+		assertThrows(IOException.class, () -> new SensorLogReader(rawLog(5, -3)));
+	}
+
+	@Test
+	public void rejectsReadingsOutOfTheGrid() throws IOException {
+		try(SensorLogReader log = new SensorLogReader(rawLog(4, 5, 19, -1, 20, -2))){
+			assertTrue(log.next());
+			assertEquals(3, log.getReadingX());
+			assertEquals(4, log.getReadingY());
+			assertTrue(log.next());
+			assertEquals(-1, log.getReadingX());
+			assertThrows(IOException.class, log::next);
+		}
+		try(SensorLogReader log = new SensorLogReader(rawLog(4, 5, -2))){
+			assertThrows(IOException.class, log::next);
+		}
+	}
+
+	@Test
+	public void unexplainedReadingStartsOver(){
+		for(boolean matrixFree : new boolean[] {false, true}){
+			HMMModel model = new HMMModel(20, 20, matrixFree, false);
+			ObservationModel O = model.getObservationModel();
+			HMMPredictor estimator = new HMMPredictor(model, new SplittableRandom(4));
+
+			//No state near (1,1) can get within sensor range of (15,15) in one move
+			estimator.observe(1, 1);
+			estimator.observe(15, 15);
+			assertDistribution(estimator);
+			assertEquals(1, estimator.getReseeds());
+			for(int x = 0; x < 20; x++){
+				for(int y = 0; y < 20; y++){
+					assertEquals(O.get(15, 15, x, y)/O.get(15, 15, 15, 15), estimator.getCurrentProb(x, y)/estimator.getCurrentProb(15, 15), 1e-12);
+				}
+			}
+			//and it goes on filtering from there
+			estimator.observe(15, 14);
+			assertDistribution(estimator);
+			assertEquals(1, estimator.getReseeds());
+		}
+	}
+
+	@Test
+	public void readingNoCellCanGiveStartsOverUniformly(){
+		for(double epsilon : new double[] {0, 1e-3}){
+			//An exact sensor never reports "nothing"
+			HMMPredictor estimator = new HMMPredictor(new HMMModel(10, 10, true, false, new double[] {1}), new SplittableRandom(6));
+
+			estimator.setPruningThreshold(epsilon);
+			estimator.observe(-1, -1);
+			assertDistribution(estimator);
+			assertEquals(1, estimator.getReseeds());
+			for(int x = 0; x < 10; x++){
+				for(int y = 0; y < 10; y++){
+					assertEquals(0.01, estimator.getCurrentProb(x, y), 1e-12);
+				}
+			}
+			estimator.observe(4, 4);
+			assertEquals(1, estimator.getCurrentProb(4, 4), 1e-12);
+		}
+	}
+
+	@Test
+	public void glitchInLogDoesNotPoisonReplay() throws IOException {
+		HMMPredictor estimator = new HMMPredictor(new HMMModel(20, 20), new SplittableRandom(5));
+
+		try(SensorLogReader log = new SensorLogReader(rawLog(20, 20, 1*20 + 1, 1*20 + 2, 15*20 + 15, -1, 15*20 + 14))){
+			assertEquals(5, log.replay(estimator));
+		}
+		assertDistribution(estimator);
+		assertEquals(1, estimator.getReseeds());
+	}
+}
@@ -0,0 +1,123 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Smoother and FixedLagSmoother against plain forward-backward on the dense matrices T and O
+ */
+public class SmootherTest {
+
+	private static final int ROWS = 4, COLS = 5, LENGTH = 40;
+	private static final double TOLERANCE = 1e-12;
+
+	private final HMMModel model = new HMMModel(ROWS, COLS);
+	private final int states = model.getNumStates();
+	private final int[] rX = new int[LENGTH], rY = new int[LENGTH];
+
+	public SmootherTest(){
+		RobotSimulator robot = new RobotSimulator(ROWS, COLS, model.getTransitionModel(), model.getObservationModel(), new SplittableRandom(7));
+
+		for(int t = 0; t < LENGTH; t++){
+			robot.move();
+			robot.sense();
+			rX[t] = robot.getReading()[0];
+			rY[t] = robot.getReading()[1];
+		}
+	}
+
+	private double o(int t, int i){
+		return model.getObservationModel().get(rX[t], rY[t], i/4/COLS, (i/4)%COLS);
+	}
+
+	private static void normalise(double[] v){
+		double sum = 0;
+
+		for(double x : v){
+			sum += x;
+		}
+		for(int i = 0; i < v.length; i++){
+			v[i] /= sum;
+		}
+	}
+
+	/*
+	 * P(X_s | e_1..e_length) for s = 1..length, computed with dense matrix products
+	 */
+	private double[][] bruteForce(int length){
+		TransitionModel T = model.getTransitionModel();
+		double[][] f = new double[length + 1][states], b = new double[length + 1][states], smoothed = new double[length + 1][states];
+
+		Arrays.fill(f[0], 1.0/states);
+		for(int t = 1; t <= length; t++){
+			for(int j = 0; j < states; j++){
+				for(int i = 0; i < states; i++){
+					f[t][j] += T.get(i, j)*f[t - 1][i];
+				}
+				f[t][j] *= o(t - 1, j);
+			}
+			normalise(f[t]);
+		}
+		Arrays.fill(b[length], 1);
+		for(int t = length; t > 0; t--){
+			for(int i = 0; i < states; i++){
+				for(int j = 0; j < states; j++){
+					b[t - 1][i] += T.get(i, j)*o(t - 1, j)*b[t][j];
+				}
+			}
+			normalise(b[t - 1]);
+		}
+		for(int t = 1; t <= length; t++){
+			for(int i = 0; i < states; i++){
+				smoothed[t][i] = f[t][i]*b[t][i];
+			}
+			normalise(smoothed[t]);
+		}
+		return smoothed;
+	}
+
+	@Test
+	public void smoothMatchesForwardBackward(){
+		double[][] expected = bruteForce(LENGTH);
+		boolean[] seen = new boolean[LENGTH + 1];
+
+		new Smoother(model).smooth(rX, rY, LENGTH, (t, belief) -> {
+			assertFalse(seen[t], "step " + t + " handed out twice");
+			seen[t] = true;
+			assertArrayEquals(expected[t], belief, TOLERANCE, "step " + t);
+		});
+		for(int t = 1; t <= LENGTH; t++){
+			assertTrue(seen[t], "step " + t + " missing");
+		}
+	}
+
+	@Test
+	public void fixedLagMatchesForwardBackward(){
+		for(int lag : new int[] {1, 3, 8}){
+			FixedLagSmoother smoother = new FixedLagSmoother(model, lag);
+
+			for(int t = 1; t <= LENGTH; t++){
+				if(!smoother.observe(rX[t - 1], rY[t - 1])){
+					assertTrue(t <= lag);
+					continue;
+				}
+				assertEquals(t - lag, smoother.getSmoothedStep());
+				assertArrayEquals(bruteForce(t)[t - lag], smoother.getSmoothed(), TOLERANCE, "lag " + lag + ", step " + t);
+			}
+		}
+	}
+
+	@Test
+	public void rejectsLagBelowOne(){
+		assertThrows(IllegalArgumentException.class, () -> new FixedLagSmoother(model, 0));
+		assertThrows(IllegalArgumentException.class, () -> new FixedLagSmoother(model, -2));
+	}
+}
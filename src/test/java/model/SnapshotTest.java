@@ -0,0 +1,137 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SnapshotTest {
+
+	private static final int ROWS = 12, COLS = 9, STEPS = 200;
+
+	@TempDir
+	Path dir;
+
+	private static double[] probs(HMMPredictor estimator){
+		double[] probs = new double[estimator.getNumRows()*estimator.getNumCols()];
+
+		estimator.getCurrentProbs(probs);
+		return probs;
+	}
+
+	//Runs the two estimators on the same readings and checks they stay bit-identical
+	private static void assertContinuesAlike(HMMPredictor original, HMMPredictor restored, RobotSimulator robot){
+		assertArrayEquals(original.getCurrentTruePosition(), restored.getCurrentTruePosition());
+		assertArrayEquals(original.getCurrentReading(), restored.getCurrentReading());
+		assertArrayEquals(probs(original), probs(restored), 0);
+		for(int t = 0; t < STEPS; t++){
+			robot.move();
+			robot.sense();
+			original.observe(robot.getReading()[0], robot.getReading()[1]);
+			restored.observe(robot.getReading()[0], robot.getReading()[1]);
+			assertArrayEquals(probs(original), probs(restored), 0, "step " + t);
+			assertEquals(original.getActiveCells(), restored.getActiveCells(), "step " + t);
+		}
+	}
+
+	private static RobotSimulator robot(HMMModel model, long seed){
+		return new RobotSimulator(ROWS, COLS, model.getTransitionModel(), model.getObservationModel(), new SplittableRandom(seed));
+	}
+
+	//An estimator some steps into a run, with the robot it follows
+	private static HMMPredictor warmedUp(HMMModel model, double epsilon, RobotSimulator robot){
+		HMMPredictor estimator = new HMMPredictor(model, new SplittableRandom(7));
+
+		estimator.setPruningThreshold(epsilon);
+		for(int t = 0; t < STEPS; t++){
+			estimator.update();
+			robot.move();
+			robot.sense();
+			estimator.observe(robot.getReading()[0], robot.getReading()[1]);
+		}
+		return estimator;
+	}
+
+	@Test
+	public void bufferRoundTripContinuesBitIdentically(){
+		for(double epsilon : new double[] {0, 1e-3}){
+			for(boolean matrixFree : new boolean[] {false, true}){
+				HMMModel model = new HMMModel(ROWS, COLS, matrixFree, false);
+				RobotSimulator robot = robot(model, 11);
+				//restored is somewhere else entirely before reading the snapshot
+				HMMPredictor original = warmedUp(model, epsilon, robot), restored = warmedUp(model, epsilon, robot(model, 21));
+				ByteBuffer buffer = ByteBuffer.allocate(original.getSnapshotSize() + 10);
+
+				buffer.position(3);
+				original.writeSnapshot(buffer);
+				assertEquals(3 + original.getSnapshotSize(), buffer.position());
+				buffer.position(3);
+				restored.readSnapshot(buffer);
+				assertEquals(3 + original.getSnapshotSize(), buffer.position());
+				assertContinuesAlike(original, restored, robot);
+			}
+		}
+	}
+
+	@Test
+	public void fileRoundTripContinuesBitIdentically() throws IOException {
+		for(double epsilon : new double[] {0, 1e-3}){
+			HMMModel model = new HMMModel(ROWS, COLS);
+			RobotSimulator robot = robot(model, 12);
+			HMMPredictor original = warmedUp(model, epsilon, robot), restored = warmedUp(model, epsilon, robot(model, 22));
+			Path file = dir.resolve("belief.snap");
+
+			//A longer file is replaced, not overwritten in part
+			Files.write(file, new byte[2*original.getSnapshotSize()]);
+			original.saveSnapshot(file);
+			assertEquals(original.getSnapshotSize(), Files.size(file));
+			restored.loadSnapshot(file);
+			assertContinuesAlike(original, restored, robot);
+		}
+	}
+
+	@Test
+	public void rejectsForeignSnapshots() throws IOException {
+		HMMModel model = new HMMModel(ROWS, COLS);
+		HMMPredictor estimator = warmedUp(model, 0, robot(model, 13)), target = new HMMPredictor(model, new SplittableRandom(10));
+		ByteBuffer snapshot = ByteBuffer.allocate(estimator.getSnapshotSize());
+		double[] before = probs(target);
+		Path file = dir.resolve("short.snap");
+
+		estimator.writeSnapshot(snapshot);
+
+		//magic and version are the first two ints
+		ByteBuffer badMagic = ByteBuffer.wrap(snapshot.array().clone());
+		badMagic.put(0, (byte) (badMagic.get(0) ^ 1));
+		assertThrows(IllegalArgumentException.class, () -> target.readSnapshot(badMagic));
+		ByteBuffer badVersion = ByteBuffer.wrap(snapshot.array().clone());
+		badVersion.put(4, (byte) (HMMPredictor.SNAPSHOT_VERSION + 1));
+		assertThrows(IllegalArgumentException.class, () -> target.readSnapshot(badVersion));
+		assertThrows(IllegalArgumentException.class, () -> target.readSnapshot(ByteBuffer.wrap(snapshot.array(), 0, snapshot.capacity() - 1)));
+
+		//Same number of states on a transposed grid
+		HMMPredictor transposed = new HMMPredictor(new HMMModel(COLS, ROWS), new SplittableRandom(10));
+		assertEquals(estimator.getSnapshotSize(), transposed.getSnapshotSize());
+		assertThrows(IllegalArgumentException.class, () -> transposed.readSnapshot(ByteBuffer.wrap(snapshot.array())));
+
+		//Same grid, another sensor
+		HMMPredictor otherSensor = new HMMPredictor(new HMMModel(ROWS, COLS, false, false, new double[] {0.1, 0.04, 0.02}), new SplittableRandom(10));
+		assertThrows(IllegalArgumentException.class, () -> otherSensor.readSnapshot(ByteBuffer.wrap(snapshot.array())));
+
+		Files.write(file, new byte[estimator.getSnapshotSize() - 1]);
+		assertThrows(IOException.class, () -> target.loadSnapshot(file));
+
+		//None of it touched the belief
+		assertArrayEquals(before, probs(target), 0);
+		//while the unchanged snapshot is accepted, from the same model built again
+		new HMMPredictor(new HMMModel(ROWS, COLS), new SplittableRandom(10)).readSnapshot(ByteBuffer.wrap(snapshot.array()));
+	}
+}
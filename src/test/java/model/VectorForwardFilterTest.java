@@ -0,0 +1,111 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * VectorForwardFilter must agree with the scalar SparseForwardFilter up to rounding, for
+ * whole rows and for rectangles that leave a scalar tail
+ */
+public class VectorForwardFilterTest {
+
+	private static final double TOLERANCE = 1e-12;
+
+	private static double[] randomBelief(int states, SplittableRandom random){
+		double[] f = new double[states];
+		double sum = 0;
+
+		for(int i = 0; i < states; i++){
+			f[i] = random.nextDouble();
+			sum += f[i];
+		}
+		for(int i = 0; i < states; i++){
+			f[i] /= sum;
+		}
+		return f;
+	}
+
+	private static void assertSameStep(HMMModel model, double[] f, int rX, int rY, int fromRow, int toRow, int fromCol, int toCol){
+		int states = model.getNumStates();
+		ForwardFilter scalar = new SparseForwardFilter(model.getNumRows(), model.getNumCols(), model.getTransitionModel(), model.getObservationModel());
+		ForwardFilter vector = new VectorForwardFilter(model.getNumRows(), model.getNumCols(), model.getTransitionModel(), model.getObservationModel());
+		double[] expected = new double[states], actual = new double[states];
+		double expectedSum, actualSum;
+
+		expectedSum = scalar.propagate(f, expected, rX, rY, fromRow, toRow, fromCol, toCol);
+		actualSum = vector.propagate(f, actual, rX, rY, fromRow, toRow, fromCol, toCol);
+		assertEquals(expectedSum, actualSum, TOLERANCE);
+		assertArrayEquals(expected, actual, TOLERANCE);
+
+		scalar.scale(expected, 1/expectedSum, 0, states);
+		vector.scale(actual, 1/actualSum, 0, states);
+		assertArrayEquals(expected, actual, TOLERANCE);
+	}
+
+	@Test
+	public void nothingOverWholeGrid(){
+		SplittableRandom random = new SplittableRandom(1);
+
+		//Odd sizes so that the state count is not a multiple of the vector length
+		for(int[] size : new int[][] {{2, 3}, {3, 5}, {8, 8}, {13, 7}}){
+			HMMModel model = new HMMModel(size[0], size[1]);
+
+			assertSameStep(model, randomBelief(model.getNumStates(), random), -1, -1, 0, size[0], 0, size[1]);
+		}
+	}
+
+	@Test
+	public void nothingOverRectangles(){
+		SplittableRandom random = new SplittableRandom(2);
+		HMMModel model = new HMMModel(13, 11);
+		double[] f = randomBelief(model.getNumStates(), random);
+
+		assertSameStep(model, f, -1, -1, 2, 9, 0, 11);
+		assertSameStep(model, f, -1, -1, 0, 13, 3, 4);
+		assertSameStep(model, f, -1, -1, 4, 12, 1, 10);
+	}
+
+	@Test
+	public void readingsMatchScalar(){
+		SplittableRandom random = new SplittableRandom(3);
+		HMMModel model = new HMMModel(9, 12);
+		double[] f = randomBelief(model.getNumStates(), random);
+
+		assertSameStep(model, f, 0, 0, 0, 9, 0, 12);
+		assertSameStep(model, f, 4, 7, 0, 9, 0, 12);
+		assertSameStep(model, f, 8, 11, 5, 9, 6, 12);
+	}
+
+	@Test
+	public void filteringMatchesScalar(){
+		HMMModel model = new HMMModel(10, 9);
+		RobotSimulator robot = new RobotSimulator(10, 9, model.getTransitionModel(), model.getObservationModel(), new SplittableRandom(4));
+		ForwardFilter scalar = new SparseForwardFilter(10, 9, model.getTransitionModel(), model.getObservationModel());
+		ForwardFilter vector = new VectorForwardFilter(10, 9, model.getTransitionModel(), model.getObservationModel());
+		int states = model.getNumStates();
+		double[] f = new double[states], g = new double[states], next = new double[states], swap;
+		double sum;
+
+		Arrays.fill(f, 1.0/states);
+		Arrays.fill(g, 1.0/states);
+		for(int t = 0; t < 500; t++){
+			robot.move();
+			robot.sense();
+
+			sum = scalar.propagate(f, next, robot.getReading()[0], robot.getReading()[1], 0, 10, 0, 9);
+			scalar.scale(next, 1/sum, 0, states);
+			swap = f; f = next; next = swap;
+
+			sum = vector.propagate(g, next, robot.getReading()[0], robot.getReading()[1], 0, 10, 0, 9);
+			vector.scale(next, 1/sum, 0, states);
+			swap = g; g = next; next = swap;
+
+			assertArrayEquals(f, g, 1e-9, "step " + t);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * ViterbiDecoder against a textbook Viterbi over the whole sequence. Ties can be broken either
+ * way, so the decoded path is compared by its probability.
+ */
+public class ViterbiDecoderTest {
+
+	private static final int ROWS = 5, COLS = 6, LENGTH = 60;
+
+	private final HMMModel model = new HMMModel(ROWS, COLS);
+	private final TransitionModel T = model.getTransitionModel();
+	private final ObservationModel O = model.getObservationModel();
+	private final int states = model.getNumStates();
+
+	private int[][] readings(long seed){
+		RobotSimulator robot = new RobotSimulator(ROWS, COLS, T, O, new SplittableRandom(seed));
+		int[][] r = new int[LENGTH][];
+
+		for(int t = 0; t < LENGTH; t++){
+			robot.move();
+			robot.sense();
+			r[t] = robot.getReading().clone();
+		}
+		return r;
+	}
+
+	private double logO(int[] reading, int state){
+		return Math.log(O.get(reading[0], reading[1], state/4/COLS, (state/4)%COLS));
+	}
+
+	//log probability of path[1..LENGTH] given the readings, from a uniform start
+	private double logProb(int[] path, int[][] r){
+		double p = 0;
+
+		for(int t = 1; t <= LENGTH; t++){
+			p += logO(r[t - 1], path[t]);
+			if(t > 1)
+				p += Math.log(T.get(path[t - 1], path[t]));
+		}
+		return p;
+	}
+
+	//log probability of the most likely path
+	private double bruteForce(int[][] r){
+		double[] delta = new double[states], next = new double[states], swap;
+		double best;
+
+		for(int s = 0; s < states; s++){
+			delta[s] = logO(r[0], s);
+		}
+		for(int t = 1; t < LENGTH; t++){
+			for(int j = 0; j < states; j++){
+				best = Double.NEGATIVE_INFINITY;
+				for(int i = 0; i < states; i++){
+					if(T.get(i, j) > 0)
+						best = Math.max(best, delta[i] + Math.log(T.get(i, j)));
+				}
+				next[j] = best + logO(r[t], j);
+			}
+			swap = delta;
+			delta = next;
+			next = swap;
+		}
+		best = Double.NEGATIVE_INFINITY;
+		for(double d : delta){
+			best = Math.max(best, d);
+		}
+		return best;
+	}
+
+	//Decodes r, checking that every step is emitted once and in order
+	private int[] decode(int[][] r, int capacity){
+		int[] path = new int[LENGTH + 1];
+		long[] last = {0};
+		ViterbiDecoder decoder = new ViterbiDecoder(model, capacity, (t, state) -> {
+			assertEquals(last[0] + 1, t, "steps out of order");
+			last[0] = t;
+			path[(int) t] = state;
+		});
+
+		for(int t = 0; t < LENGTH; t++){
+			decoder.observe(r[t][0], r[t][1]);
+			assertEquals(t + 1, decoder.getStep());
+			assertTrue(decoder.getDecidedStep() <= decoder.getStep());
+		}
+		decoder.finish();
+		assertEquals(LENGTH, last[0]);
+		return path;
+	}
+
+	@Test
+	public void findsTheMostLikelyPath(){
+		for(long seed = 1; seed <= 5; seed++){
+			int[][] r = readings(seed);
+
+			//Room for the whole sequence, so no decision is forced
+			assertEquals(bruteForce(r), logProb(decode(r, LENGTH + 1), r), 1e-9, "seed " + seed);
+		}
+	}
+
+	@Test
+	public void smallBufferEmitsEveryStep(){
+		for(long seed = 1; seed <= 5; seed++){
+			int[][] r = readings(seed);
+			int[] path = decode(r, 3);
+
+			for(int t = 1; t <= LENGTH; t++){
+				assertTrue(path[t] >= 0 && path[t] < states);
+			}
+		}
+	}
+
+	@Test
+	public void rejectsEmptyBuffer(){
+		assertThrows(IllegalArgumentException.class, () -> new ViterbiDecoder(model, 0, (t, state) -> {}));
+	}
+}
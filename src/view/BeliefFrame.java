@@ -0,0 +1,75 @@
+package view;
+
+import control.EstimatorInterface;
+
+/*
+ * Immutable copy of what a viewer shows after a step: the probability of every cell, the true
+ * position and the reading. It can be handed from the thread running the estimator to the
+ * one drawing it without any locking.
+ */
+public final class BeliefFrame {
+
+	private final long step;
+	private final int rows, cols;
+	private final double[] belief;
+	private final int tX, tY, sX, sY;
+
+	private BeliefFrame( long step, int rows, int cols, double[] belief, int tX, int tY, int sX, int sY) {
+		this.step = step;
+		this.rows = rows;
+		this.cols = cols;
+		this.belief = belief;
+		this.tX = tX;
+		this.tY = tY;
+		this.sX = sX;
+		this.sY = sY;
+	}
+
+	/*
+	 * copies the current state of loc; must be called on the thread that steps it
+	 */
+	public static BeliefFrame capture( long step, EstimatorInterface loc) {
+		int rows = loc.getNumRows(), cols = loc.getNumCols();
+		double[] belief = new double[rows*cols];
+		int[] tXY = loc.getCurrentTruePosition();
+		int[] sXY = loc.getCurrentReading();
+
+		loc.getCurrentProbs( belief);
+		if( sXY == null)
+			return new BeliefFrame( step, rows, cols, belief, tXY[0], tXY[1], -1, -1);
+		return new BeliefFrame( step, rows, cols, belief, tXY[0], tXY[1], sXY[0], sXY[1]);
+	}
+
+	public long getStep() {
+		return step;
+	}
+	public int getNumRows() {
+		return rows;
+	}
+	public int getNumCols() {
+		return cols;
+	}
+	public double getProb( int x, int y) {
+		return belief[x*cols + y];
+	}
+	public int getTrueX() {
+		return tX;
+	}
+	public int getTrueY() {
+		return tY;
+	}
+	/*
+	 * the reading, -1 for "nothing"
+	 */
+	public int getReadingX() {
+		return sX;
+	}
+	public int getReadingY() {
+		return sY;
+	}
+
+	//The cells as x*cols + y, for the panels of this package, which only read it
+	double[] belief() {
+		return belief;
+	}
+}
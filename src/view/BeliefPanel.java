@@ -0,0 +1,205 @@
+package view;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+
+/*
+ * Draws the belief over a grid as a heatmap in a single component. The back buffer holds one
+ * pixel per cell and is drawn scaled to the cell size, so an update only writes the pixels of
+ * the cells whose colour changed and repaints the rectangle around them. The probabilities are
+ * written in the cells, as in RobotLocalizationViewer, only once cells are at least LABEL_CELL
+ * pixels wide, and only for the cells being repainted.
+ */
+public class BeliefPanel extends JComponent {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int LABEL_CELL = 48;
+	//Colours go from pale yellow to red over this many decades of probability
+	private static final int DECADES = 4;
+	private static final int[] PALETTE = palette();
+
+	private final int rows, cols;
+	private final BufferedImage image;
+	private final int[] pixels;
+	//Palette entry and label (in units of 1e-4) shown for each cell
+	private final int[] shown, labels;
+	private int cell;
+	private int trueCell, readingCell, maxCell;
+	private int fromRow, toRow, fromCol, toCol;
+
+	public BeliefPanel( int rows, int cols, int cell) {
+		this.rows = rows;
+		this.cols = cols;
+		this.cell = cell;
+
+		image = new BufferedImage( cols, rows, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		shown = new int[rows*cols];
+		labels = new int[rows*cols];
+		Arrays.fill( pixels, PALETTE[0]);
+		trueCell = readingCell = maxCell = -1;
+		setOpaque( true);
+		setFont( new Font( Font.SANS_SERIF, Font.PLAIN, 11));
+	}
+
+	/*
+	 * pixels per cell; labels are drawn from LABEL_CELL on
+	 */
+	public synchronized void setCellSize( int cell) {
+		this.cell = Math.max( 1, cell);
+		revalidate();
+		repaint();
+	}
+	public synchronized int getCellSize() {
+		return cell;
+	}
+
+	@Override
+	public synchronized Dimension getPreferredSize() {
+		return new Dimension( cols*cell, rows*cell);
+	}
+
+	/*
+	 * shows belief[x*cols + y], the probability of each cell, with the true position (tX,tY)
+	 * and the reading (sX,sY), (-1,-1) for "nothing". Only what changed is redrawn. It can be
+	 * called from any thread.
+	 */
+	public synchronized void update( double[] belief, int tX, int tY, int sX, int sY) {
+		int max = 0, colour, label;
+
+		fromRow = fromCol = Integer.MAX_VALUE;
+		toRow = toCol = -1;
+		for( int c=0; c<rows*cols; c++) {
+			if( belief[c] > belief[max])
+				max = c;
+			colour = colour( belief[c]);
+			label = (int) Math.round( belief[c]*1e4);
+			if( colour != shown[c]) {
+				shown[c] = colour;
+				pixels[c] = PALETTE[colour];
+				dirty( c);
+			}
+			if( label != labels[c]) {
+				labels[c] = label;
+				if( cell >= LABEL_CELL)
+					dirty( c);
+			}
+		}
+		maxCell = mark( maxCell, belief[max] > 0 ? max : -1);
+		trueCell = mark( trueCell, tX*cols + tY);
+		readingCell = mark( readingCell, sX >= 0 && sY >= 0 ? sX*cols + sY : -1);
+
+		if( toRow >= 0)
+			repaint( fromCol*cell, fromRow*cell, (toCol - fromCol)*cell, (toRow - fromRow)*cell);
+	}
+
+	//Moves a marker from cell old to cell now, redrawing both
+	private int mark( int old, int now) {
+		if( old != now) {
+			dirty( old);
+			dirty( now);
+		}
+		return now;
+	}
+
+	private void dirty( int c) {
+		if( c < 0)
+			return;
+		fromRow = Math.min( fromRow, c/cols);
+		toRow = Math.max( toRow, c/cols + 1);
+		fromCol = Math.min( fromCol, c%cols);
+		toCol = Math.max( toCol, c%cols + 1);
+	}
+
+	@Override
+	protected synchronized void paintComponent( Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		int firstRow, lastRow, firstCol, lastCol, x, y;
+		String text;
+
+		if( clip == null)
+			clip = new Rectangle( 0, 0, getWidth(), getHeight());
+		g.setColor( getBackground());
+		g.fillRect( clip.x, clip.y, clip.width, clip.height);
+		g.drawImage( image, 0, 0, cols*cell, rows*cell, null);
+
+		marker( g, maxCell, Color.lightGray, false);
+		marker( g, trueCell, Color.black, true);
+		marker( g, readingCell, Color.cyan, true);
+
+		if( cell < LABEL_CELL)
+			return;
+		firstRow = Math.max( 0, clip.y/cell);
+		lastRow = Math.min( rows, (clip.y + clip.height)/cell + 1);
+		firstCol = Math.max( 0, clip.x/cell);
+		lastCol = Math.min( cols, (clip.x + clip.width)/cell + 1);
+		for( int i=firstRow; i<lastRow; i++) {
+			for( int j=firstCol; j<lastCol; j++) {
+				x = j*cell;
+				y = i*cell;
+				g.setColor( Color.black);
+				g.drawRect( x, y, cell - 1, cell - 1);
+				text = String.format( "%.4f", labels[i*cols + j]/1e4);
+				g.drawString( text, x + (cell - g.getFontMetrics().stringWidth( text))/2, y + g.getFontMetrics().getAscent() + 2);
+			}
+		}
+	}
+
+	//A frame around the cell, or a square in its centre; never less than 3 pixels wide
+	private void marker( Graphics g, int c, Color colour, boolean centre) {
+		int x, y, size, width;
+
+		if( c < 0)
+			return;
+		x = (c%cols)*cell;
+		y = (c/cols)*cell;
+		g.setColor( colour);
+		if( centre) {
+			size = Math.max( 3, cell/3);
+			g.fillRect( x + (cell - size)/2, y + (cell - size)/2, size, size);
+		} else {
+			width = Math.max( 1, cell/8);
+			size = Math.max( 3, cell);
+			x -= (size - cell)/2;
+			y -= (size - cell)/2;
+			g.fillRect( x, y, size, width);
+			g.fillRect( x, y + size - width, size, width);
+			g.fillRect( x, y, width, size);
+			g.fillRect( x + size - width, y, width, size);
+		}
+	}
+
+	//Entry 0 is white for probability 0, then from pale yellow through orange to red
+	private static int colour( double p) {
+		double level;
+
+		if( p <= 0)
+			return 0;
+		level = (Math.log10( p) + DECADES)/DECADES;
+		return 1 + (int) (254*Math.max( 0, Math.min( 1, level)));
+	}
+
+	private static int[] palette() {
+		int[] palette = new int[256];
+		float t;
+
+		palette[0] = Color.white.getRGB();
+		for( int k=1; k<256; k++) {
+			t = (k - 1)/254f;
+			if( t < 0.5f)
+				palette[k] = new Color( 255, 255, (int) (160*(1 - 2*t))).getRGB();
+			else
+				palette[k] = new Color( 255, (int) (255*(2 - 2*t)), 0).getRGB();
+		}
+		return palette;
+	}
+}
@@ -0,0 +1,148 @@
+package view;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+
+import control.*;
+
+/*
+ * Viewer for grids too large for RobotLocalizationViewer: the belief, the true position and
+ * the reading are drawn by a single BeliefPanel instead of a set of text fields per cell.
+ * It has the same controls, plus zoom; the probabilities are written in the cells when
+ * zoomed in far enough.
+ */
+public class HeatmapViewer implements Viewer {
+
+	//Largest size of the grid on screen when the viewer opens
+	private static final int INITIAL_SIZE = 800;
+
+	private JFrame viewer;
+	private BeliefPanel panel;
+	private int rows, cols;
+	private EstimatorInterface loc;
+	//What the buttons act on, this viewer unless set otherwise
+	private Viewer controls;
+	private double[] belief;
+	private boolean initFlag;
+
+	public HeatmapViewer( EstimatorInterface l) {
+		loc = l;
+		this.rows = loc.getNumRows();
+		this.cols = loc.getNumCols();
+		belief = new double[rows*cols];
+
+		initFlag = false;
+		controls = this;
+
+		viewer = new JFrame( "RobotLocalizer");
+		viewer.setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE);
+		panel = new BeliefPanel( rows, cols, Math.max( 1, Math.min( 64, INITIAL_SIZE/Math.max( rows, cols))));
+
+		JPanel buttonPanel = new JPanel();
+		JButton initButton = new JButton( "Init filter");
+		initButton.addActionListener( new ActionListener() {
+			public void actionPerformed( ActionEvent e) {
+				controls.initLocViewer();
+			}
+		});
+
+		JButton stepButton = new JButton( "One step");
+		stepButton.addActionListener( new ActionListener() {
+			public void actionPerformed( ActionEvent e) {
+				controls.updateOneStep();
+			}
+		});
+
+		JButton runButton = new JButton( "Go");
+		runButton.addActionListener( new ActionListener() {
+			public void actionPerformed( ActionEvent e) {
+				controls.setRunFlag( true);
+			}
+		});
+		JButton stopButton = new JButton( "Stop");
+		stopButton.addActionListener( new ActionListener() {
+			public void actionPerformed( ActionEvent e) {
+				controls.setRunFlag( false);
+			}
+		});
+
+		JButton zoomInButton = new JButton( "Zoom in");
+		zoomInButton.addActionListener( new ActionListener() {
+			public void actionPerformed( ActionEvent e) {
+				panel.setCellSize( panel.getCellSize()*2);
+			}
+		});
+		JButton zoomOutButton = new JButton( "Zoom out");
+		zoomOutButton.addActionListener( new ActionListener() {
+			public void actionPerformed( ActionEvent e) {
+				panel.setCellSize( panel.getCellSize()/2);
+			}
+		});
+
+		buttonPanel.add( initButton);
+		buttonPanel.add( stepButton);
+		buttonPanel.add( runButton);
+		buttonPanel.add( stopButton);
+		buttonPanel.add( zoomInButton);
+		buttonPanel.add( zoomOutButton);
+
+		viewer.add( new JScrollPane( panel), BorderLayout.CENTER);
+		viewer.add( buttonPanel, BorderLayout.SOUTH);
+
+		viewer.pack();
+		viewer.setVisible( true);
+	}
+
+	/*
+	 * makes the buttons act on controls instead, e.g. a SimulationPipeline that steps the
+	 * estimator on its own thread and calls render
+	 */
+	public void setControls( Viewer controls) {
+		this.controls = controls;
+	}
+
+	/*
+	 * shows a frame captured elsewhere; to be called on the event thread
+	 */
+	public void render( BeliefFrame frame) {
+		panel.update( frame.belief(), frame.getTrueX(), frame.getTrueY(), frame.getReadingX(), frame.getReadingY());
+		viewer.setTitle( "RobotLocalizer - step " + frame.getStep());
+	}
+
+	/*
+	 * nothing to run on its own: the steps are paced by whatever took over the buttons
+	 * through setControls, e.g. a LocalizationDriver
+	 */
+	public void setRunFlag( boolean run) {
+	}
+
+	public synchronized void initLocViewer() {
+		int[] start = loc.getCurrentTruePosition();
+
+		updateViewer( start[0], start[1], -1, -1);
+		initFlag = true;
+	}
+
+	public synchronized void updateOneStep() {
+		if( initFlag) {
+			loc.update();
+			int[] tXY = loc.getCurrentTruePosition();
+			int[] sXY = loc.getCurrentReading();
+			if( sXY != null)
+				updateViewer( tXY[0], tXY[1], sXY[0], sXY[1]);
+			else
+				updateViewer( tXY[0], tXY[1], -1, -1);
+		}
+	}
+
+	public void updateViewer( int tX, int tY, int sX, int sY) {
+		loc.getCurrentProbs( belief);
+		panel.update( belief, tX, tY, sX, sY);
+	}
+}
@@ -13,23 +13,30 @@ import javax.swing.border.LineBorder;
 import control.*;
 
 
-public class RobotLocalizationViewer {
+public class RobotLocalizationViewer implements Viewer {
 	
 	private JFrame viewer;
 	private JTextField[][][] states;
 	private JPanel[][] positions;
 	private int rows, cols, head;
 	private EstimatorInterface loc;
+	//Buffers for the bulk getters, one entry per cell and one per state
+	private double[] cellProbs, stateProbs;
 	private int sXCount, sYCount, tXCount, tYCount, tHCount;
 	private boolean runFlag, initFlag;
+	//What the buttons act on, this viewer unless set otherwise
+	private Viewer controls;
 	
 	public RobotLocalizationViewer( EstimatorInterface l) {
 		loc = l;
 		this.rows = loc.getNumRows();
 		this.cols = loc.getNumCols();
 		this.head = loc.getNumHead();
+		cellProbs = new double[rows*cols];
+		stateProbs = new double[rows*cols*head];
 		
 		runFlag = initFlag = false;
+		controls = this;
 		
 		sXCount = sYCount = 0;
 		tXCount = tYCount = tHCount = 0;
@@ -75,27 +82,27 @@ public class RobotLocalizationViewer {
 		JButton initButton = new JButton( "Init filter");
 		initButton.addActionListener( new ActionListener() {
 			public void actionPerformed( ActionEvent e) {
-				initLocViewer();
+				controls.initLocViewer();
 			}
 		});
 	
 		JButton stepButton = new JButton( "One step");
 		stepButton.addActionListener( new ActionListener() {
 			public void actionPerformed( ActionEvent e) {
-				updateOneStep();
+				controls.updateOneStep();
 			}
 		});
 		
 		JButton runButton = new JButton( "Go");
 		runButton.addActionListener( new ActionListener() {
 			public void actionPerformed( ActionEvent e) {
-				setRunFlag( true);
+				controls.setRunFlag( true);
 			}
 		});
 		JButton stopButton = new JButton( "Stop");
 		stopButton.addActionListener( new ActionListener() {
 			public void actionPerformed( ActionEvent e) {
-				setRunFlag( false);
+				controls.setRunFlag( false);
 			}
 		});
 
@@ -138,6 +145,13 @@ public class RobotLocalizationViewer {
 	}
 	
 
+	/*
+	 * makes the buttons act on controls instead, e.g. the LocalizationDriver running this viewer
+	 */
+	public void setControls( Viewer controls) {
+		this.controls = controls;
+	}
+
 	public synchronized void setRunFlag( boolean run) {
 		runFlag = run;
 		notifyAll();
@@ -178,11 +192,11 @@ public class RobotLocalizationViewer {
 		posProb = 0.0;
 		posProbMax = 0.0;
 		maxX = maxY = -1;
+		loc.getCurrentProbs( cellProbs);
 		for( x=0; x<rows; x++) {
 			for( y=0; y<cols; y++) {
 
-				posProb = 0.0;
-				posProb = loc.getCurrentProb( x, y);
+				posProb = cellProbs[x*cols + y];
 				states[x][y][0].setText( String.format("%.4f", posProb));	
 
 				for( h=1; h<5; h++) {
@@ -234,10 +248,11 @@ public class RobotLocalizationViewer {
 
 		int x, y, h;
 		
+		loc.getTRow( tXCount, tYCount, tHCount, stateProbs);
 		for( x=0; x<rows; x++) {
 			for( y=0; y<cols; y++) {
 				for( h=0; h<head; h++) {
-					states[x][y][h].setText( String.format("%.2f", loc.getTProb( tXCount, tYCount, tHCount, x, y, h)));
+					states[x][y][h].setText( String.format("%.2f", stateProbs[(x*cols + y)*head + h]));
 					states[x][y][h].setBackground(Color.white);
 						
 				}
@@ -277,6 +292,7 @@ public class RobotLocalizationViewer {
 		}
 
 		
+		loc.getOrVector( sXCount, sYCount, stateProbs);
 		for( x=0; x<rows; x++) {
 			for( y=0; y<cols; y++) {
 				s = "";
@@ -285,7 +301,7 @@ public class RobotLocalizationViewer {
 
 				for( h=0; h<4; h++) {
 					states[x][y][h].setBackground(Color.white);		
-					s = String.format("%.3f", loc.getOrXY( sXCount, sYCount, x, y, h));
+					s = String.format("%.3f", stateProbs[(x*cols + y)*head + h]);
 					states[x][y][h].setText( s);
 				}
 				
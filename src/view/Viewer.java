@@ -0,0 +1,21 @@
+package view;
+
+/*
+ * Controls of a viewer: what its buttons do. LocalizationDriver and SimulationPipeline
+ * implement them as well, to take over the buttons of the viewer they run.
+ */
+public interface Viewer {
+
+	public void setRunFlag( boolean run);
+
+	public void initLocViewer();
+
+	public void updateOneStep();
+
+	/*
+	 * makes the buttons act on controls instead of this viewer; viewers without buttons
+	 * ignore it
+	 */
+	public default void setControls( Viewer controls) {
+	}
+}